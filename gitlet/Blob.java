@@ -1,69 +1,335 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
 
 /**
- * A Blob class saves a staged file as a byte array.
+ * A Blob class refers to the content of a staged file in the object
+ * store. The content is kept on disk as the raw bytes of the file,
+ * under the SHA1 of those bytes, and is always read and written as a
+ * stream through a fixed-size buffer, so the heap used by a blob does
+ * not depend on the size of the file. Large files are split into
+ * content-defined chunks instead, and their blob is a manifest that
+ * lists the SHA1s of the chunks.
  *
  * @author Chloe Lin, Christal Huang
  */
-public class Blob implements Serializable {
+public class Blob {
 
     /**
      * The name of a staged file.
      */
     private String fileName;
-    /**
-     * The content of a staged file.
-     */
-    private byte[] fileContent;
     /**
      * The SHA1 of a blob object.
      */
     private String blobSHA1;
+
     /**
-     * Create a blob for a file.
+     * Create a blob for a file in the working directory. The content
+     * is hashed as a stream and is not kept in memory.
      * @param filename the name of the staged file.
      */
-    public Blob(String  filename) {
+    public Blob(String filename) {
         this.fileName = filename;
-        this.fileContent = Utils.readContents(Utils.join(".", filename));
-        this.blobSHA1 = Utils.sha1(this.fileContent);
+        this.blobSHA1 = Utils.sha1(Utils.join(".", filename));
     }
 
     /**
      * Blob Constructor.
      * @param filename the filename
      * @param blobSHA1 the blobSHA1
-     * @param fileContent the fileContent
      */
-
-    public Blob(String filename, byte[] fileContent, String blobSHA1) {
+    public Blob(String filename, String blobSHA1) {
         this.fileName = filename;
-        this.fileContent = fileContent;
         this.blobSHA1 = blobSHA1;
-        //style check error: param name should be different with this.blobSHA1
-        //also for fileContent
     }
 
     /**
-     * Save a blob as a byte array. Use SHA1 as its file name.
+     * Save a blob in the object store. Use SHA1 as its file name.
+     * Blobs are content addressed, so a blob that is already in the
+     * object store is not written again.
      */
     public void save() throws IOException {
-        Blob blob = new Blob(this.fileName, this.fileContent, this.blobSHA1);
-        File blobFile = Utils.join(Main.BLOBS_FOLDER, this.getBlobSHA1());
-        blobFile.createNewFile();
-        Utils.writeObject(blobFile, blob);
+        if (exists(this.blobSHA1)) {
+            return;
+        }
+        this.blobSHA1 = store(this.fileName).getBlobSHA1();
+    }
+
+    /**
+     * Copy a file of the working directory into the object store,
+     * hashing it while it is copied, and return its blob.
+     * @param filename the name of the staged file.
+     */
+    public static Blob store(String filename) throws IOException {
+        File file = Utils.join(".", filename);
+        try (InputStream in = new FileInputStream(file)) {
+            return store(filename, in, file.length());
+        }
+    }
+
+    /**
+     * Save CONTENT in the object store and return its blob, without
+     * writing it to the working directory.
+     * @param filename the name of the file the content is for
+     * @param content the content of the file
+     */
+    public static Blob store(String filename, byte[] content) {
+        try {
+            return store(filename, new ByteArrayInputStream(content), content.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copy LENGTH bytes from IN into the object store, hashing them while
+     * they are copied, and return their blob.
+     * @param filename the name of the file the content is for
+     * @param in the content of the file
+     * @param length the length of the content
+     */
+    public static Blob store(String filename, InputStream in, long length)
+            throws IOException {
+        if (length >= Chunker.CHUNKING_THRESHOLD) {
+            return storeChunked(filename, in);
+        }
+        return store(filename, out -> in.transferTo(out));
+    }
+
+    /**
+     * Save the content WRITER writes into the object store, hashing it
+     * while it is written, and return its blob. The content is written
+     * to a temporary file and renamed into place, which keeps concurrent
+     * writers of the same blob from seeing a partial file; content that
+     * turns out to be large is split into chunks instead.
+     * @param filename the name of the file the content is for
+     * @param writer writes the content of the file
+     */
+    public static Blob store(String filename, ContentWriter writer) throws IOException {
+        File tmp = File.createTempFile("blob", ".tmp", Main.BLOBS_FOLDER);
+        MessageDigest md = newDigest();
+        try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp.toPath()), Utils.BUFFER_SIZE), md)) {
+            writer.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (tmp.length() >= Chunker.CHUNKING_THRESHOLD) {
+            try (InputStream in = new FileInputStream(tmp)) {
+                return storeChunked(filename, in);
+            } finally {
+                tmp.delete();
+            }
+        }
+        String blobSHA1 = Utils.toHex(md.digest());
+        File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
+        if (blobFile.exists()) {
+            tmp.delete();
+        } else {
+            Files.move(tmp.toPath(), blobFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new Blob(filename, blobSHA1);
+    }
+
+    /**
+     * Writes the content of a blob to a stream.
+     */
+    public interface ContentWriter {
+        /**
+         * Write the content to OUT.
+         * @param out the stream to write to
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Split a large file into chunks, save the chunks that are not
+     * stored yet and a manifest listing all of them, and return its blob.
+     * @param filename the name of the staged file.
+     * @param in the content of the file
+     */
+    private static Blob storeChunked(String filename, InputStream in) throws IOException {
+        MessageDigest md = newDigest();
+        List<String> chunkIds = Chunker.storeChunks(in, md);
+        String blobSHA1 = Utils.toHex(md.digest());
+        File manifest = manifestFile(blobSHA1);
+        if (!manifest.exists()) {
+            Main.MANIFESTS_FOLDER.mkdirs();
+            File tmp = File.createTempFile("manifest", ".tmp", Main.MANIFESTS_FOLDER);
+            StringBuilder content = new StringBuilder();
+            chunkIds.forEach(chunkId -> content.append(chunkId).append('\n'));
+            Utils.writeContents(tmp, content.toString());
+            Files.move(tmp.toPath(), manifest.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new Blob(filename, blobSHA1);
+    }
+
+    /**
+     * Return true if a blob with the given SHA1 is in the object store.
+     * @param blobSHA1 the SHA1 of a blob
+     */
+    public static boolean exists(String blobSHA1) {
+        return Utils.join(Main.BLOBS_FOLDER, blobSHA1).exists()
+                || manifestFile(blobSHA1).exists();
+    }
+
+    /**
+     * Return the manifest file of a chunked blob.
+     * @param blobSHA1 the SHA1 of a blob
+     */
+    static File manifestFile(String blobSHA1) {
+        return Utils.join(Main.MANIFESTS_FOLDER, blobSHA1);
+    }
+
+    /**
+     * Return true if the blob is stored as chunks.
+     */
+    public boolean isChunked() {
+        return manifestFile(this.blobSHA1).exists();
+    }
+
+    /**
+     * Return the SHA1s of the chunks of a chunked blob, in order.
+     */
+    public List<String> getChunkIds() {
+        String manifest = Utils.readContentsAsString(manifestFile(this.blobSHA1));
+        List<String> chunkIds = new ArrayList<>();
+        for (String line : manifest.split("\n")) {
+            if (!line.isEmpty()) {
+                chunkIds.add(line);
+            }
+        }
+        return chunkIds;
+    }
+
+    /**
+     * Return the blob of a file as it is saved in the object store. A
+     * blob that a blob-less clone did not copy is fetched from its
+     * promisor first.
+     * @param filename the name of the file
+     * @param blobSHA1 the SHA1 of the blob
+     */
+    public static Blob load(String filename, String blobSHA1) {
+        if (ObjectCache.local().hasBlob(blobSHA1)) {
+            return new Blob(filename, blobSHA1);
+        }
+        if (!exists(blobSHA1)) {
+            Promisor.prefetch(List.of(blobSHA1));
+        }
+        if (!exists(blobSHA1)) {
+            throw new IllegalArgumentException("no blob " + blobSHA1);
+        }
+        return new Blob(filename, blobSHA1);
+    }
+
+    /**
+     * Return the length of the content of a blob.
+     */
+    public long size() {
+        if (!isChunked()) {
+            return getObjectFile().length();
+        }
+        long size = 0;
+        for (String chunkId : getChunkIds()) {
+            size += Chunker.chunkFile(chunkId).length();
+        }
+        return size;
     }
 
     /**
-     * Return a blob object from the byte array.
-     * @param blob the blob
+     * Return true if the blob looks like a binary file. Only the first
+     * bytes of the content are read.
      */
-    public static Blob load(File blob) {
-        return Utils.readObject(blob, Blob.class);
+    public boolean isBinary() {
+        try (InputStream in = openStream()) {
+            return Diff.isBinary(in.readNBytes(Diff.BINARY_CHECK_LENGTH));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the content of a blob to TARGET, overwriting it, by
+     * transferring it directly from the object store.
+     * @param target the file to write
+     */
+    public void restore(File target) throws IOException {
+        List<File> parts = new ArrayList<>();
+        if (isChunked()) {
+            getChunkIds().forEach(chunkId -> parts.add(Chunker.chunkFile(chunkId)));
+        } else {
+            parts.add(getObjectFile());
+        }
+        try (FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (File part : parts) {
+                try (FileChannel in = FileChannel.open(part.toPath(),
+                        StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Return a stream over the content of a blob.
+     */
+    public InputStream openStream() throws IOException {
+        if (!isChunked()) {
+            return new FileInputStream(getObjectFile());
+        }
+        Iterator<String> chunkIds = getChunkIds().iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunkIds.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return new FileInputStream(Chunker.chunkFile(chunkIds.next()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Return the file of a blob in the object store. Chunked blobs are
+     * stored in several files and have no single object file.
+     */
+    public File getObjectFile() {
+        return Utils.join(Main.BLOBS_FOLDER, this.blobSHA1);
     }
 
     /**
@@ -80,11 +346,30 @@ public class Blob implements Serializable {
         return this.fileName;
     }
 
-
     /**
-     * Return the file content byte array of a blob.
+     * Return the file content byte array of a blob. This reads the whole
+     * content into memory, use openStream or restore for large files.
+     * Small contents are kept in the object cache, and the array must
+     * not be changed.
      */
     public byte[] getFileContent() {
-        return this.fileContent;
+        return ObjectCache.local().blob(this.blobSHA1, () -> {
+            try (InputStream in = openStream()) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Return a new SHA-1 message digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
     }
 }
@@ -4,7 +4,6 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.List;
 
 /**
  * A Branch class represents a branch object
@@ -61,18 +60,17 @@ public class Branch implements Serializable {
      * Create a new Branch reference as a file.
      */
     public void create() throws IOException {
-        Branch branch = new Branch(this.name, this.head);
-        File file = Utils.join(Main.HEADS_REFS_FOLDER, this.name);
-        file.createNewFile();
-        save(file, branch);
+        ObjectStore.local().writeBranch(this.name, null, this.head,
+                "branch: Created from HEAD");
     }
 
     /**
-     * Return a branch object from the byte array.
+     * Return a branch object from the byte array, through the object
+     * cache.
      * @param branch the byte array file of a branch object.
      */
     public static Branch load(File branch) {
-        return Utils.readObject(branch, Branch.class);
+        return ObjectCache.local().tree(branch, Branch.class);
     }
 
     /**
@@ -89,7 +87,27 @@ public class Branch implements Serializable {
      * @param name the name
      */
     public static Boolean hasBranch(String name) {
-        List<String> branches = Utils.plainFilenamesIn(Main.HEADS_REFS_FOLDER);
-        return branches.contains(name);
+        return ObjectStore.local().hasBranch(name);
+    }
+
+    /**
+     * Return true if NAME can name a branch: one or more components
+     * separated by "/", none empty or starting with ".", nor ending with
+     * ".lock", and no white space, control or special characters, so
+     * that the branch file stays under refs/heads.
+     * @param name the name
+     */
+    public static boolean isValidName(String name) {
+        if (name == null || name.isEmpty()
+                || !name.matches("[^\\x00-\\x20\\x7f\\\\:~^?*\\[]+")) {
+            return false;
+        }
+        for (String component : name.split("/", -1)) {
+            if (component.isEmpty() || component.startsWith(".")
+                    || component.endsWith(".lock")) {
+                return false;
+            }
+        }
+        return true;
     }
 }
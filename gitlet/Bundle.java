@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Bundle is a single file holding branches and the objects they need,
+ * for moving a repository where no path to it can be shared. It starts
+ * with a header listing the prerequisite commits the receiving
+ * repository must already have and the branches with their head
+ * commits, followed by a pack of the commits and blobs reachable from
+ * the branches but not from the prerequisites. The file is written and
+ * read in one sequential pass.
+ *
+ * @author Chloe Lin
+ */
+public class Bundle {
+
+    /**
+     * The first bytes of a bundle.
+     */
+    static final String MAGIC = "GITLETBUNDLE";
+    /**
+     * The version of the bundle format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The header of a bundle.
+     */
+    public static class Header {
+        /** The SHA1s of the commits the receiver must have. */
+        private final List<String> prerequisites;
+        /** The head commit SHA1s of the branches, by name. */
+        private final Map<String, String> refs;
+
+        Header(List<String> prerequisites, Map<String, String> refs) {
+            this.prerequisites = prerequisites;
+            this.refs = refs;
+        }
+
+        public List<String> getPrerequisites() {
+            return prerequisites;
+        }
+
+        public Map<String, String> getRefs() {
+            return refs;
+        }
+    }
+
+    /**
+     * Write the branches REFS of the current repository to FILE, with
+     * the commits reachable from their heads down to the commits BASES
+     * and the blobs that are not in the snapshots of BASES. An empty
+     * BASES bundles the whole history.
+     * @param file the bundle file to write
+     * @param refs the head commits of the branches to bundle, by name
+     * @param bases the commits the receiver already has
+     */
+    public static void create(File file, Map<String, Commit> refs, List<Commit> bases)
+            throws IOException {
+        ObjectStore local = ObjectStore.local();
+        Set<String> baseCommits = new HashSet<>();
+        Set<String> baseBlobs = new HashSet<>();
+        for (Commit base : bases) {
+            baseCommits.add(base.getSHA());
+            baseBlobs.addAll(base.getSnapshot().values());
+        }
+        Set<String> commits = new LinkedHashSet<>();
+        for (Commit head : refs.values()) {
+            commits.addAll(Pack.missingCommits(local, head.getSHA(),
+                    sha1 -> baseCommits.contains(sha1) || commits.contains(sha1)));
+        }
+        Set<String> blobs = Pack.missingBlobs(local, commits, baseBlobs::contains);
+
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()), Utils.BUFFER_SIZE)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeUTF(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(baseCommits.size());
+            for (String sha1 : baseCommits) {
+                data.writeUTF(sha1);
+            }
+            data.writeInt(refs.size());
+            for (Map.Entry<String, Commit> ref : refs.entrySet()) {
+                data.writeUTF(ref.getKey());
+                data.writeUTF(ref.getValue().getSHA());
+            }
+            data.flush();
+            Pack.write(local, commits, blobs, chunkId -> false, out);
+        }
+    }
+
+    /**
+     * Read the header of the bundle IN, leaving IN at its pack.
+     * @param in the bundle
+     */
+    static Header readHeader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (!data.readUTF().equals(MAGIC) || data.readInt() != VERSION) {
+            throw new IOException("not a gitlet bundle");
+        }
+        List<String> prerequisites = new ArrayList<>();
+        for (int n = data.readInt(); n > 0; n--) {
+            String sha1 = data.readUTF();
+            if (!Utils.isSHA1(sha1)) {
+                throw new IOException("bad prerequisite " + sha1);
+            }
+            prerequisites.add(sha1);
+        }
+        Map<String, String> refs = new LinkedHashMap<>();
+        for (int n = data.readInt(); n > 0; n--) {
+            String name = data.readUTF();
+            String sha1 = data.readUTF();
+            if (!Branch.isValidName(name) || !Utils.isSHA1(sha1)) {
+                throw new IOException("bad ref " + name);
+            }
+            refs.put(name, sha1);
+        }
+        return new Header(prerequisites, refs);
+    }
+
+    /**
+     * Return the prerequisite commits of the bundle FILE that the
+     * current repository does not have. Only the header is read.
+     * @param file the bundle file
+     */
+    public static List<String> missingPrerequisites(File file) throws IOException {
+        ObjectStore local = ObjectStore.local();
+        List<String> missing = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            for (String sha1 : readHeader(in).getPrerequisites()) {
+                if (!local.hasCommit(sha1)) {
+                    missing.add(sha1);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Store the objects of the bundle FILE in the current repository and
+     * return its header.
+     * @param file the bundle file to read
+     */
+    public static Header unbundle(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(
+                Files.newInputStream(file.toPath()), Utils.BUFFER_SIZE)) {
+            Header header = readHeader(in);
+            Pack.read(in, ObjectStore.local());
+            return header;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * A Chunker splits the content of large files at content-defined
+ * boundaries, using the Gear rolling hash with the normalized chunking
+ * of FastCDC. Since the boundaries depend only on the bytes around them,
+ * an edit in one region of a file only changes the chunks that cover it,
+ * and every other chunk keeps its SHA1 and is shared with the previous
+ * version. Chunks are stored as content-addressed objects in the chunks
+ * folder.
+ *
+ * @author Chloe Lin
+ */
+public class Chunker {
+
+    /**
+     * Files at least this large are stored as chunks.
+     */
+    static final long CHUNKING_THRESHOLD = 1024 * 1024;
+    /**
+     * The smallest chunk, except for the last chunk of a file.
+     */
+    static final int MIN_SIZE = 64 * 1024;
+    /**
+     * The size chunks are normalized around.
+     */
+    static final int AVG_SIZE = 256 * 1024;
+    /**
+     * The largest chunk.
+     */
+    static final int MAX_SIZE = 1024 * 1024;
+    /**
+     * The mask used before AVG_SIZE, with more bits set so cuts are
+     * less likely.
+     */
+    private static final long MASK_S = 0xFFFFF00000000000L;
+    /**
+     * The mask used after AVG_SIZE, with fewer bits set so cuts are
+     * more likely.
+     */
+    private static final long MASK_L = 0xFFFF000000000000L;
+    /**
+     * Random values for each byte. The seed is fixed, since the chunk
+     * boundaries of a file must be the same in every run and repository.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Return the length of the chunk that starts at OFF in BUF, where
+     * LEN bytes are available. LEN must be at least MAX_SIZE unless the
+     * bytes run up to the end of the file.
+     * @param buf the buffer
+     * @param off start of the chunk
+     * @param len number of bytes available
+     */
+    static int cutPoint(byte[] buf, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int n = Math.min(len, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i++) {
+            hash = (hash << 1) + GEAR[buf[off + i] & 0xff];
+            if ((hash & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Split the content of IN into chunks, save every chunk that is not
+     * in the object store yet, and return the SHA1s of the chunks in
+     * order. FILEDIGEST is updated with the whole content. At most
+     * MAX_SIZE bytes of the content are held in memory.
+     * @param in the content to split
+     * @param fileDigest digest of the whole content
+     */
+    static List<String> storeChunks(InputStream in, MessageDigest fileDigest)
+            throws IOException {
+        List<String> chunkIds = new ArrayList<>();
+        byte[] buf = new byte[MAX_SIZE];
+        int len = 0;
+        boolean eof = false;
+        Main.CHUNKS_FOLDER.mkdirs();
+
+        while (!eof || len > 0) {
+            while (!eof && len < MAX_SIZE) {
+                int n = in.read(buf, len, MAX_SIZE - len);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    fileDigest.update(buf, len, n);
+                    len += n;
+                }
+            }
+            if (len == 0) {
+                break;
+            }
+            int cut = cutPoint(buf, 0, len);
+            chunkIds.add(saveChunk(buf, cut));
+            System.arraycopy(buf, cut, buf, 0, len - cut);
+            len -= cut;
+        }
+        return chunkIds;
+    }
+
+    /**
+     * Save the first LEN bytes of BUF as a chunk unless a chunk with the
+     * same content is already stored, and return its SHA1.
+     * @param buf the buffer
+     * @param len length of the chunk
+     */
+    private static String saveChunk(byte[] buf, int len) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        md.update(buf, 0, len);
+        String chunkId = Utils.toHex(md.digest());
+        File chunkFile = chunkFile(chunkId);
+        if (!chunkFile.exists()) {
+            File tmp = File.createTempFile("chunk", ".tmp", Main.CHUNKS_FOLDER);
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                out.write(buf, 0, len);
+            }
+            Files.move(tmp.toPath(), chunkFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return chunkId;
+    }
+
+    /**
+     * Return the file of a chunk in the object store.
+     * @param chunkId the SHA1 of a chunk
+     */
+    static File chunkFile(String chunkId) {
+        return Utils.join(Main.CHUNKS_FOLDER, chunkId);
+    }
+}
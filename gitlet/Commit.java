@@ -12,6 +12,16 @@ import java.util.*;
  * saves a snapshot of staged files, parent SHA1,
  * and metadata including timestamp and commit message.
  *
+ * The id of a commit hashes its message, its parents and the names and
+ * blobs of its snapshot in name order, so that the same change on
+ * different parents, as rebase and merge produce, gets different ids,
+ * and a commit received from another repository can be checked against
+ * its id. Older versions of gitlet left
+ * the parents out, so repositories made by them hold commits whose file
+ * names are not the ids this version computes for them; such commits
+ * are still read by their file name, but new commits never share ids
+ * with them.
+ *
  * @author Chloe Lin, Christal Huang
  */
 public class Commit implements Serializable {
@@ -56,15 +66,11 @@ public class Commit implements Serializable {
      * @param map the file-blob hashmap
      */
     public Commit(String msg, String parent, boolean initial, Map<String, String> map) {
-        List<String> list = new ArrayList<String>(map.values());
-        // create unique sha
-        String blobFileNames = "";
-        for (String blobFileName : list) {
-            blobFileNames += blobFileName;
-        }
         this.message = msg;
         this.parents[0] = parent;
-        this.sha1 = Utils.sha1("COMMIT" + message + blobFileNames);
+        // include the parent, so that the same change replayed on another
+        // commit by rebase does not overwrite the original commit
+        this.sha1 = hash("COMMIT", message, parent, map);
         this.timestamp = generateDate(initial);
         this.snapshot = map;
         this.init = initial;
@@ -86,11 +92,7 @@ public class Commit implements Serializable {
         Commit commit = new Commit(this.message, this.parents[0],
                 true, this.snapshot);
         File commitFile = Utils.join(Main.COMMITS_FOLDER, this.sha1);
-        File commitLogs = Utils.join(Main.LOGS_FOLDER, this.sha1);
-        commitFile.createNewFile();
-        commitLogs.createNewFile();
-        Utils.writeObject(commitFile, commit);
-        Utils.writeObject(commitLogs, commit);
+        Utils.replaceObject(commitFile, commit);
     }
 
     /** for merge commits only */
@@ -101,22 +103,45 @@ public class Commit implements Serializable {
                   Map<String, String> map,
                   HashSet<String> deletedSnapshot) {
 
-        List<String> list = new ArrayList<String>(map.values());
-        // create unique sha
-        String blobFileNames = "";
-        for (String blobFileName : list) {
-            blobFileNames += blobFileName;
-        }
         this.message = msg;
         this.parents[0] = firstParent;
         this.parents[1] = secondParent;
-        this.sha1 = Utils.sha1("MERGE" + message + blobFileNames);
+        // include both parents, so that merges with the same message and
+        // result on different parents do not overwrite each other
+        this.sha1 = hash("MERGE", message, firstParent + secondParent, map);
         this.timestamp = generateDate(initial);
         this.init = initial;
         this.snapshot = map; // TODO: files added
         this.deletedSnapshot = deletedSnapshot; // TODO: files deleted at merge
     }
 
+    /**
+     * Return the id of a commit of kind KIND, COMMIT or MERGE, with the
+     * message MSG, the parents PARENTS and the snapshot MAP. The files
+     * of the snapshot are hashed in name order, so the id does not
+     * depend on the order of the map and can be computed again from a
+     * commit read from another repository.
+     */
+    private static String hash(String kind, String msg, String parents,
+                               Map<String, String> map) {
+        StringBuilder files = new StringBuilder();
+        new TreeMap<>(map).forEach((fileName, blobSHA1) ->
+                files.append(fileName).append('\0').append(blobSHA1));
+        return Utils.sha1(kind + msg + parents + files);
+    }
+
+    /**
+     * Return the id this commit has according to its content, which is
+     * the id it is saved under unless the commit file was tampered with.
+     * The sentinel commit is not hashed this way.
+     */
+    public String computeSHA() {
+        if (this.parents[1] != null) {
+            return hash("MERGE", message, parents[0] + parents[1], snapshot);
+        }
+        return hash("COMMIT", message, parents[0], snapshot);
+    }
+
     /**
      * Save a commit node into a byte array.
      */
@@ -124,8 +149,7 @@ public class Commit implements Serializable {
         Commit commit = new Commit(this.message, this.parents[0],
                 this.init, this.snapshot);
         File commitFile = Utils.join(Main.COMMITS_FOLDER, this.sha1);
-        commitFile.createNewFile();
-        Utils.writeObject(commitFile, commit);
+        Utils.replaceObject(commitFile, commit);
     }
 
     /**
@@ -140,37 +164,41 @@ public class Commit implements Serializable {
                         this.snapshot,
                         this.deletedSnapshot);
         File commitFile = Utils.join(Main.COMMITS_FOLDER, this.sha1);
-        commitFile.createNewFile();
-        Utils.writeObject(commitFile, commit);
+        Utils.replaceObject(commitFile, commit);
     }
 
     /**
      * Return the parent commit node of a given node.
      */
     public Commit getParent() {
-        String parentSha1 = this.parents[0];
+        String parentSha1 = getFirstParentSHA1();
         Commit parent = load(parentSha1);
         return parent;
     }
 
     public Commit getParent2() {
-        String parent2Sha1 = this.parents[1];
+        String parent2Sha1 = getSecondParentSHA1();
         Commit parent = load(parent2Sha1);
         return parent;
     }
 
     /**
-     * Return a commit node from a byte array.
+     * Return a commit node from a byte array, through the object cache.
      */
     public static Commit load(String sha1) {
         File commitFile = Utils.join(Main.COMMITS_FOLDER, sha1);
-        return Utils.readObject(commitFile, Commit.class);
+        return ObjectCache.local().commit(commitFile);
     }
 
     /**
-     * Return the SHA1 of the first parent commit node.
+     * Return the SHA1 of the first parent commit node. The commits of
+     * a shallow clone whose parents are missing have the sentinel commit
+     * as their parent.
      */
     public String getFirstParentSHA1() {
+        if (Shallow.isShallow(this.sha1)) {
+            return Repo.SENTINEL_COMMIT_ID;
+        }
         return this.parents[0];
     }
 
@@ -178,6 +206,9 @@ public class Commit implements Serializable {
      * Return the SHA1 of the second parent commit node.
      */
     public String getSecondParentSHA1() {
+        if (Shallow.isShallow(this.sha1)) {
+            return null;
+        }
         return this.parents[1];
     }
 
@@ -0,0 +1,231 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A ContentMerge merges two versions of a text file line by line
+ * against the version at the split point (diff3). The changes of each
+ * branch are found with LineDiff; changes to different regions of the
+ * base are both applied, identical changes are applied once, and only
+ * regions changed differently by both branches are written as conflicts.
+ *
+ * @author Chloe Lin
+ */
+public class ContentMerge {
+
+    /**
+     * Marker at the start of a conflict region.
+     */
+    static final byte[] OURS_MARKER = "<<<<<<< HEAD\n".getBytes();
+    /**
+     * Marker between the two sides of a conflict region.
+     */
+    static final byte[] SEPARATOR_MARKER = "=======\n".getBytes();
+    /**
+     * Marker at the end of a conflict region.
+     */
+    static final byte[] THEIRS_MARKER = ">>>>>>>\n".getBytes();
+
+    /**
+     * The merged content of a file and the number of conflict regions
+     * left in it.
+     */
+    public static class Result {
+        /** The merged content. */
+        private final byte[] content;
+        /** The number of conflict regions. */
+        private final int conflicts;
+
+        Result(byte[] content, int conflicts) {
+            this.content = content;
+            this.conflicts = conflicts;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public int getConflicts() {
+            return conflicts;
+        }
+
+        public boolean hasConflicts() {
+            return conflicts > 0;
+        }
+    }
+
+    /**
+     * Return true if IN holds a conflict region, a line with the start
+     * marker followed by a line with the end marker, as merge writes.
+     * @param in the content of a file
+     */
+    public static boolean hasConflictMarkers(InputStream in) throws IOException {
+        String start = new String(OURS_MARKER, StandardCharsets.ISO_8859_1).trim();
+        String end = new String(THEIRS_MARKER, StandardCharsets.ISO_8859_1).trim();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.ISO_8859_1));
+        boolean started = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.equals(start)) {
+                started = true;
+            } else if (started && line.equals(end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merge OURS and THEIRS, which were both derived from BASE.
+     * @param base content at the split point, empty if the file was not there
+     * @param ours content in the current branch
+     * @param theirs content in the given branch
+     */
+    public static Result merge(byte[] base, byte[] ours, byte[] theirs) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                Math.max(ours.length, theirs.length));
+        try {
+            int conflicts = merge(base, ours, theirs, out);
+            return new Result(out.toByteArray(), conflicts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Merge OURS and THEIRS, which were both derived from BASE, writing
+     * the merged content to OUT, and return the number of conflict
+     * regions. The lines are written straight from the contents.
+     * @param base content at the split point, empty if the file was not there
+     * @param ours content in the current branch
+     * @param theirs content in the given branch
+     * @param out where the merged content is written
+     */
+    public static int merge(byte[] base, byte[] ours, byte[] theirs, OutputStream out)
+            throws IOException {
+        LineDiff.Lines[] lines = LineDiff.split(base, ours, theirs);
+        LineDiff.Lines baseLines = lines[0];
+        LineDiff.Lines oursLines = lines[1];
+        LineDiff.Lines theirsLines = lines[2];
+        List<LineDiff.Edit> oursEdits = LineDiff.diff(baseLines, oursLines);
+        List<LineDiff.Edit> theirsEdits = LineDiff.diff(baseLines, theirsLines);
+
+        int conflicts = 0;
+        int basePos = 0;
+        int oursDelta = 0;
+        int theirsDelta = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < oursEdits.size() || j < theirsEdits.size()) {
+            // Start a group with the edit that begins first in the base,
+            // then pull in every edit of either side that overlaps or
+            // touches the base range of the group.
+            boolean takeOurs = j == theirsEdits.size() || (i < oursEdits.size()
+                    && oursEdits.get(i).getAStart() <= theirsEdits.get(j).getAStart());
+            int groupStart = takeOurs ? oursEdits.get(i).getAStart()
+                    : theirsEdits.get(j).getAStart();
+            int groupEnd = groupStart;
+            int firstOurs = i;
+            int firstTheirs = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (i < oursEdits.size() && oursEdits.get(i).getAStart() <= groupEnd) {
+                    groupEnd = Math.max(groupEnd, oursEdits.get(i).getAEnd());
+                    i += 1;
+                    grew = true;
+                }
+                if (j < theirsEdits.size() && theirsEdits.get(j).getAStart() <= groupEnd) {
+                    groupEnd = Math.max(groupEnd, theirsEdits.get(j).getAEnd());
+                    j += 1;
+                    grew = true;
+                }
+            }
+
+            write(out, baseLines, basePos, groupStart);
+
+            int oursStart = groupStart + oursDelta;
+            int theirsStart = groupStart + theirsDelta;
+            for (int k = firstOurs; k < i; k++) {
+                LineDiff.Edit edit = oursEdits.get(k);
+                oursDelta += (edit.getBEnd() - edit.getBStart())
+                        - (edit.getAEnd() - edit.getAStart());
+            }
+            for (int k = firstTheirs; k < j; k++) {
+                LineDiff.Edit edit = theirsEdits.get(k);
+                theirsDelta += (edit.getBEnd() - edit.getBStart())
+                        - (edit.getAEnd() - edit.getAStart());
+            }
+            int oursEnd = groupEnd + oursDelta;
+            int theirsEnd = groupEnd + theirsDelta;
+
+            if (j == firstTheirs) {
+                write(out, oursLines, oursStart, oursEnd);
+            } else if (i == firstOurs) {
+                write(out, theirsLines, theirsStart, theirsEnd);
+            } else if (sameLines(oursLines, oursStart, oursEnd,
+                    theirsLines, theirsStart, theirsEnd)) {
+                write(out, oursLines, oursStart, oursEnd);
+            } else {
+                conflicts += 1;
+                out.write(OURS_MARKER, 0, OURS_MARKER.length);
+                writeSide(out, oursLines, oursStart, oursEnd);
+                out.write(SEPARATOR_MARKER, 0, SEPARATOR_MARKER.length);
+                writeSide(out, theirsLines, theirsStart, theirsEnd);
+                out.write(THEIRS_MARKER, 0, THEIRS_MARKER.length);
+            }
+            basePos = groupEnd;
+        }
+        write(out, baseLines, basePos, baseLines.size());
+        return conflicts;
+    }
+
+    /**
+     * Return true if lines [aStart, aEnd) of A equal lines
+     * [bStart, bEnd) of B.
+     */
+    private static boolean sameLines(LineDiff.Lines a, int aStart, int aEnd,
+                                     LineDiff.Lines b, int bStart, int bEnd) {
+        if (aEnd - aStart != bEnd - bStart) {
+            return false;
+        }
+        for (int k = 0; k < aEnd - aStart; k++) {
+            if (a.id(aStart + k) != b.id(bStart + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write lines [start, end) of LINES to OUT.
+     */
+    private static void write(OutputStream out, LineDiff.Lines lines,
+                              int start, int end) throws IOException {
+        if (start < end) {
+            out.write(lines.getData(), lines.start(start), lines.end(end - 1) - lines.start(start));
+        }
+    }
+
+    /**
+     * Write lines [start, end) of LINES to OUT as one side of a conflict,
+     * ending it with a newline so the next marker starts on its own line.
+     */
+    private static void writeSide(OutputStream out, LineDiff.Lines lines,
+                                  int start, int end) throws IOException {
+        write(out, lines, start, end);
+        if (start < end && !lines.hasNewline(end - 1)) {
+            out.write('\n');
+        }
+    }
+}
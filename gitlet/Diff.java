@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * A Diff prints the differences between two snapshots as a unified
+ * diff. The snapshots are walked together in file name order, files
+ * whose blob SHA1s are equal are skipped without reading them, and the
+ * lines of the other files are compared with LineDiff and written
+ * straight from their bytes.
+ *
+ * @author Chloe Lin
+ */
+public class Diff {
+
+    /**
+     * Number of unchanged lines shown around each change.
+     */
+    static final int CONTEXT = 3;
+    /**
+     * Number of leading bytes checked for a NUL byte to decide whether a
+     * file is binary.
+     */
+    static final int BINARY_CHECK_LENGTH = 8000;
+    /**
+     * Printed after a last line that has no newline.
+     */
+    private static final byte[] NO_NEWLINE =
+            "\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Print the differences from OLDSNAPSHOT to NEWSNAPSHOT. The content
+     * of a file is read with OLDCONTENT or NEWCONTENT, which are given
+     * the file name and its blob SHA1.
+     * @param oldSnapshot the old file-blob mapping
+     * @param newSnapshot the new file-blob mapping
+     * @param oldContent reads a file of the old snapshot
+     * @param newContent reads a file of the new snapshot
+     * @param out where the diff is printed
+     */
+    public static void print(Map<String, String> oldSnapshot,
+                             Map<String, String> newSnapshot,
+                             BiFunction<String, String, byte[]> oldContent,
+                             BiFunction<String, String, byte[]> newContent,
+                             PrintStream out) {
+        SnapshotWalk walk = new SnapshotWalk(oldSnapshot, newSnapshot);
+        while (walk.next()) {
+            String oldId = walk.id(0);
+            String newId = walk.id(1);
+            if (oldId != null && oldId.equals(newId)) {
+                continue;
+            }
+            String path = walk.path();
+            byte[] oldBytes = oldId == null ? new byte[0] : oldContent.apply(path, oldId);
+            byte[] newBytes = newId == null ? new byte[0] : newContent.apply(path, newId);
+            printFile(path, oldId != null, newId != null, oldBytes, newBytes, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Return the blob content of a file, for use as the content reader
+     * of a snapshot in the object store.
+     * @param fileName the name of the file
+     * @param blobSHA1 the SHA1 of its blob
+     */
+    public static byte[] blobContent(String fileName, String blobSHA1) {
+        return Blob.load(fileName, blobSHA1).getFileContent();
+    }
+
+    /**
+     * Return the content of a file in the working directory, for use as
+     * the content reader of the working tree.
+     * @param fileName the name of the file
+     * @param blobSHA1 the SHA1 of the file, not used
+     */
+    public static byte[] workingContent(String fileName, String blobSHA1) {
+        return Utils.readContents(Utils.join(".", fileName));
+    }
+
+    /**
+     * Return true if CONTENT looks like a binary file, that is, if it has
+     * a NUL byte near its start.
+     * @param content the content of a file
+     */
+    public static boolean isBinary(byte[] content) {
+        int n = Math.min(content.length, BINARY_CHECK_LENGTH);
+        for (int i = 0; i < n; i++) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Print the diff of one file.
+     */
+    private static void printFile(String path, boolean inOld, boolean inNew,
+                                  byte[] oldBytes, byte[] newBytes, PrintStream out) {
+        out.println("diff --git a/" + path + " b/" + path);
+        if (!inOld) {
+            out.println("new file");
+        } else if (!inNew) {
+            out.println("deleted file");
+        }
+        if (isBinary(oldBytes) || isBinary(newBytes)) {
+            out.println("Binary files " + (inOld ? "a/" + path : "/dev/null")
+                    + " and " + (inNew ? "b/" + path : "/dev/null") + " differ");
+            return;
+        }
+        out.println("--- " + (inOld ? "a/" + path : "/dev/null"));
+        out.println("+++ " + (inNew ? "b/" + path : "/dev/null"));
+
+        LineDiff.Lines[] lines = LineDiff.split(oldBytes, newBytes);
+        List<LineDiff.Edit> edits = LineDiff.diff(lines[0], lines[1]);
+        int first = 0;
+        while (first < edits.size()) {
+            int last = first;
+            while (last + 1 < edits.size()
+                    && edits.get(last + 1).getAStart() - edits.get(last).getAEnd()
+                        <= 2 * CONTEXT) {
+                last += 1;
+            }
+            printHunk(lines[0], lines[1], edits.subList(first, last + 1), out);
+            first = last + 1;
+        }
+    }
+
+    /**
+     * Print one hunk made of EDITS and the context around them.
+     */
+    private static void printHunk(LineDiff.Lines a, LineDiff.Lines b,
+                                  List<LineDiff.Edit> edits, PrintStream out) {
+        LineDiff.Edit firstEdit = edits.get(0);
+        LineDiff.Edit lastEdit = edits.get(edits.size() - 1);
+        int aFrom = Math.max(0, firstEdit.getAStart() - CONTEXT);
+        int aTo = Math.min(a.size(), lastEdit.getAEnd() + CONTEXT);
+        int bFrom = firstEdit.getBStart() - (firstEdit.getAStart() - aFrom);
+        int bTo = lastEdit.getBEnd() + (aTo - lastEdit.getAEnd());
+
+        out.println("@@ -" + range(aFrom, aTo - aFrom)
+                + " +" + range(bFrom, bTo - bFrom) + " @@");
+        int aPos = aFrom;
+        for (LineDiff.Edit edit : edits) {
+            printLines(' ', a, aPos, edit.getAStart(), out);
+            printLines('-', a, edit.getAStart(), edit.getAEnd(), out);
+            printLines('+', b, edit.getBStart(), edit.getBEnd(), out);
+            aPos = edit.getAEnd();
+        }
+        printLines(' ', a, aPos, aTo, out);
+    }
+
+    /**
+     * Return the line range of a hunk header.
+     */
+    private static String range(int from, int length) {
+        if (length == 1) {
+            return String.valueOf(from + 1);
+        }
+        return (length == 0 ? from : from + 1) + "," + length;
+    }
+
+    /**
+     * Print lines [start, end) of LINES, each after PREFIX.
+     */
+    private static void printLines(char prefix, LineDiff.Lines lines,
+                                   int start, int end, PrintStream out) {
+        for (int i = start; i < end; i++) {
+            out.write(prefix);
+            out.write(lines.getData(), lines.start(i), lines.end(i) - lines.start(i));
+            if (!lines.hasNewline(i)) {
+                out.write('\n');
+                out.write(NO_NEWLINE, 0, NO_NEWLINE.length);
+            }
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package gitlet;
 
-import java.io.File;
-
 /**
  * Head Class.
  * @author Chloe Lin, Christal Huang
@@ -12,19 +10,26 @@ public class Head {
      * Set up the global HEAD, default to master.
      * @param branchName the branchName
      * @param commit the commit
+     * @param reason why HEAD is moved, for its reflog
      */
-    public static void setGlobalHEAD(String branchName, Commit commit) {
+    public static void setGlobalHEAD(String branchName, Commit commit, String reason) {
         Branch branch = new Branch(branchName, commit);
-        File branchFile = Utils.join(Main.GITLET_FOLDER, "HEAD");
-        Utils.writeObject(branchFile, branch);
+        LockFile lock = LockFile.acquire(Main.HEAD);
+        try {
+            Reflog.append(Reflog.headLog(Main.HEAD), Reflog.headSHA1(Main.HEAD),
+                    commit.getSHA(), reason);
+            lock.write(Utils.serialize(branch));
+            lock.commit();
+        } finally {
+            lock.rollback();
+        }
     }
 
     /**
      * Return the commit node that the global HEAD pointer points to.
      */
     public static Commit getGlobalHEAD() {
-        File HEAD = Utils.join(Main.GITLET_FOLDER, "HEAD");
-        return Branch.load(HEAD).getHEAD();
+        return Branch.load(Main.HEAD).getHEAD();
     }
 
     /**
@@ -34,9 +39,41 @@ public class Head {
      * @param commit the commit
      */
     public static void setBranchHEAD(String branchName, Commit commit) {
-        Branch branch = new Branch(branchName, commit);
-        File branchFile = Utils.join(Main.HEADS_REFS_FOLDER, branchName);
-        Utils.writeObject(branchFile, branch);
+        ObjectStore.local().writeBranch(branchName, null, commit, "branch: moved");
+    }
+
+    /**
+     * Point the current branch BRANCHNAME and the global HEAD at COMMIT
+     * in one ref transaction, only if the branch still points at the
+     * commit OLDSHA1. Return whether they were moved; this fails if
+     * another process moved the branch since OLDSHA1 was read.
+     * @param branchName the branchName
+     * @param oldSHA1 the SHA1 of the commit the branch is expected at
+     * @param commit the commit
+     * @param reason why the branch is moved, for the reflogs
+     */
+    public static boolean advance(String branchName, String oldSHA1, Commit commit,
+                                  String reason) {
+        return new RefTransaction(ObjectStore.local(), reason)
+                .update(branchName, oldSHA1, commit)
+                .updateHead(Main.HEAD, branchName, commit)
+                .commit();
+    }
+
+    /**
+     * Point the global HEAD at the branch BRANCHNAME at COMMIT, without
+     * moving the branch, only if HEAD still points at the commit
+     * OLDSHA1. Return whether HEAD was moved.
+     * @param branchName the branchName
+     * @param oldSHA1 the SHA1 of the commit HEAD is expected at
+     * @param commit the commit
+     * @param reason why HEAD is moved, for its reflog
+     */
+    public static boolean moveGlobalHEAD(String branchName, String oldSHA1, Commit commit,
+                                         String reason) {
+        return new RefTransaction(ObjectStore.local(), reason)
+                .updateHead(Main.HEAD, oldSHA1, branchName, commit)
+                .commit();
     }
 
     /**
@@ -44,7 +81,6 @@ public class Head {
      * @param branchName the branchName
      */
     public static Commit getBranchHEAD(String branchName) {
-        File branch = Utils.join(Main.HEADS_REFS_FOLDER, branchName);
-        return Branch.load(branch).getHEAD();
+        return ObjectStore.local().branchHead(branchName);
     }
 }
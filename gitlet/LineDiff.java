@@ -0,0 +1,405 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A LineDiff computes the difference between the lines of two files
+ * with the linear-space O(ND) algorithm of Myers. Lines are never
+ * decoded into Strings: the content is split into byte ranges and every
+ * distinct line gets an int id, so comparing two lines is comparing two
+ * ints. Common prefixes and suffixes are stripped before searching,
+ * which keeps the usual case of a few local edits near-linear, and
+ * lines that do not occur in the other file at all are left out of the
+ * search, as xdiff does, so a rewritten file costs a single pass. The
+ * search for a middle snake gives up after MAX_COST edit steps, or the
+ * square root of the size of the range if larger, and splits the range
+ * in the middle instead, so that files with many scattered changes stay
+ * near O((N+M) log(N+M)) at the price of a longer edit script.
+ *
+ * @author Chloe Lin
+ */
+public class LineDiff {
+
+    /**
+     * The fewest edit steps a middle snake search takes before giving up.
+     */
+    static final int MAX_COST = 256;
+
+    /**
+     * The lines of a file, as byte ranges of its content. Each line
+     * includes its terminating newline, if it has one.
+     */
+    public static class Lines {
+        /** The content of the file. */
+        private final byte[] data;
+        /** Start of each line, followed by the end of the content. */
+        private final int[] starts;
+        /** The id of each line, equal for lines with the same bytes. */
+        private final int[] ids;
+
+        Lines(byte[] data, int[] starts, int[] ids) {
+            this.data = data;
+            this.starts = starts;
+            this.ids = ids;
+        }
+
+        /** Return the number of lines. */
+        public int size() {
+            return ids.length;
+        }
+
+        /** Return the content of the file. */
+        public byte[] getData() {
+            return data;
+        }
+
+        /** Return the offset of the first byte of line I. */
+        public int start(int i) {
+            return starts[i];
+        }
+
+        /** Return the offset after the last byte of line I. */
+        public int end(int i) {
+            return starts[i + 1];
+        }
+
+        /** Return the id of line I. */
+        public int id(int i) {
+            return ids[i];
+        }
+
+        /** Return the ids of all lines. */
+        public int[] getIds() {
+            return ids;
+        }
+
+        /** Return true if line I ends with a newline. */
+        public boolean hasNewline(int i) {
+            return end(i) > start(i) && data[end(i) - 1] == '\n';
+        }
+    }
+
+    /**
+     * A region where two files differ: lines [aStart, aEnd) of the first
+     * file are replaced by lines [bStart, bEnd) of the second. An empty
+     * range on one side is a pure insertion or deletion.
+     */
+    public static class Edit {
+        /** First line of the region in the first file. */
+        private final int aStart;
+        /** End of the region in the first file. */
+        private int aEnd;
+        /** First line of the region in the second file. */
+        private final int bStart;
+        /** End of the region in the second file. */
+        private int bEnd;
+
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        public int getAStart() {
+            return aStart;
+        }
+
+        public int getAEnd() {
+            return aEnd;
+        }
+
+        public int getBStart() {
+            return bStart;
+        }
+
+        public int getBEnd() {
+            return bEnd;
+        }
+    }
+
+    /**
+     * A line as a byte range, used as the key when lines are given ids.
+     */
+    private static class LineKey {
+        /** The content the line is in. */
+        private final byte[] data;
+        /** Start of the line. */
+        private final int start;
+        /** End of the line. */
+        private final int end;
+        /** Hash of the bytes of the line. */
+        private final int hash;
+
+        LineKey(byte[] data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + data[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LineKey)) {
+                return false;
+            }
+            LineKey other = (LineKey) o;
+            return hash == other.hash
+                    && Arrays.equals(data, start, end, other.data, other.start, other.end);
+        }
+    }
+
+    /**
+     * Split each of CONTENTS into lines, giving the same id to equal
+     * lines across all of them.
+     * @param contents the contents of the files to compare
+     */
+    public static Lines[] split(byte[]... contents) {
+        Map<LineKey, Integer> lineIds = new HashMap<>();
+        Lines[] result = new Lines[contents.length];
+        for (int c = 0; c < contents.length; c++) {
+            byte[] data = contents[c];
+            int count = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == '\n') {
+                    count += 1;
+                }
+            }
+            if (data.length > 0 && data[data.length - 1] != '\n') {
+                count += 1;
+            }
+            int[] starts = new int[count + 1];
+            int[] ids = new int[count];
+            int line = 0;
+            int start = 0;
+            for (int i = 0; i <= data.length; i++) {
+                if (i == data.length ? i > start : data[i] == '\n') {
+                    int end = i == data.length ? i : i + 1;
+                    starts[line] = start;
+                    ids[line] = lineIds.computeIfAbsent(new LineKey(data, start, end),
+                            key -> lineIds.size());
+                    line += 1;
+                    start = end;
+                }
+            }
+            starts[count] = data.length;
+            result[c] = new Lines(data, starts, ids);
+        }
+        return result;
+    }
+
+    /**
+     * Return the regions where the lines of A and B differ, in order.
+     * @param a the lines of the first file
+     * @param b the lines of the second file
+     */
+    public static List<Edit> diff(Lines a, Lines b) {
+        return diff(a.getIds(), b.getIds());
+    }
+
+    /**
+     * Return the regions where the sequences of line ids A and B
+     * differ, in order.
+     * @param a the line ids of the first file
+     * @param b the line ids of the second file
+     */
+    public static List<Edit> diff(int[] a, int[] b) {
+        int ids = 0;
+        for (int id : a) {
+            ids = Math.max(ids, id + 1);
+        }
+        for (int id : b) {
+            ids = Math.max(ids, id + 1);
+        }
+        boolean[] inA = new boolean[ids];
+        boolean[] inB = new boolean[ids];
+        for (int id : a) {
+            inA[id] = true;
+        }
+        for (int id : b) {
+            inB[id] = true;
+        }
+        int[] aLines = matchable(a, inB);
+        int[] bLines = matchable(b, inA);
+        int[] aKept = new int[aLines.length];
+        int[] bKept = new int[bLines.length];
+        for (int i = 0; i < aLines.length; i++) {
+            aKept[i] = a[aLines[i]];
+        }
+        for (int j = 0; j < bLines.length; j++) {
+            bKept[j] = b[bLines[j]];
+        }
+
+        List<Edit> kept = new ArrayList<>();
+        int size = 2 * (aKept.length + bKept.length) + 2;
+        int[] forward = new int[2 * size + 1];
+        int[] backward = new int[2 * size + 1];
+        compare(aKept, 0, aKept.length, bKept, 0, bKept.length, forward, backward, kept);
+
+        List<Edit> edits = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        int aNext = 0;
+        int bNext = 0;
+        for (int e = 0; e <= kept.size(); e++) {
+            int aStop = e < kept.size() ? kept.get(e).aStart : aKept.length;
+            for (; i < aStop; i++, j++) {
+                if (aNext < aLines[i] || bNext < bLines[j]) {
+                    addEdit(edits, aNext, aLines[i], bNext, bLines[j]);
+                }
+                aNext = aLines[i] + 1;
+                bNext = bLines[j] + 1;
+            }
+            if (e < kept.size()) {
+                i = kept.get(e).aEnd;
+                j = kept.get(e).bEnd;
+            }
+        }
+        if (aNext < a.length || bNext < b.length) {
+            addEdit(edits, aNext, a.length, bNext, b.length);
+        }
+        return edits;
+    }
+
+    /**
+     * Return the indices of the lines of IDS whose id is in OTHER, the
+     * only lines that can be common to both files.
+     */
+    private static int[] matchable(int[] ids, boolean[] other) {
+        int count = 0;
+        for (int id : ids) {
+            if (other[id]) {
+                count += 1;
+            }
+        }
+        int[] lines = new int[count];
+        count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (other[ids[i]]) {
+                lines[count] = i;
+                count += 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Find the edits between A[aLo, aHi) and B[bLo, bHi) and append them
+     * to EDITS, by splitting both ranges at a middle snake.
+     */
+    private static void compare(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                int[] forward, int[] backward, List<Edit> edits) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                addEdit(edits, aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+        int[] snake = middleSnake(a, aLo, aHi, b, bLo, bHi, forward, backward);
+        compare(a, aLo, snake[0], b, bLo, snake[1], forward, backward, edits);
+        compare(a, snake[2], aHi, b, snake[3], bHi, forward, backward, edits);
+    }
+
+    /**
+     * Return the start and end {x, y, u, v} of the middle snake of the
+     * shortest edit script between A[aLo, aHi) and B[bLo, bHi), or an
+     * empty snake in the middle of both ranges if it takes more than
+     * the cost limit to find. The ranges must differ in their first and
+     * in their last element.
+     */
+    private static int[] middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                     int[] forward, int[] backward) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int offset = forward.length / 2;
+        int max = (n + m + 1) / 2;
+        int limit = Math.max(MAX_COST, (int) Math.sqrt(n + m));
+        forward[offset + 1] = 0;
+        backward[offset + delta - 1] = n;
+
+        for (int d = 0; d <= max; d++) {
+            if (d > limit) {
+                return new int[] {aLo + n / 2, bLo + m / 2, aLo + n / 2, bLo + m / 2};
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                        && x >= backward[offset + k]) {
+                    return new int[] {aLo + startX, bLo + startY, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int kk = k + delta;
+                int x;
+                if (k == d || (k != -d && backward[offset + kk - 1] < backward[offset + kk + 1])) {
+                    x = backward[offset + kk - 1];
+                } else {
+                    x = backward[offset + kk + 1] - 1;
+                }
+                int y = x - kk;
+                int endX = x;
+                int endY = y;
+                while (x > 0 && y > 0 && a[aLo + x - 1] == b[bLo + y - 1]) {
+                    x -= 1;
+                    y -= 1;
+                }
+                backward[offset + kk] = x;
+                if (!odd && kk >= -d && kk <= d && x <= forward[offset + kk]) {
+                    return new int[] {aLo + x, bLo + y, aLo + endX, bLo + endY};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /**
+     * Append an edit, joining it with the previous one if they touch.
+     */
+    private static void addEdit(List<Edit> edits, int aStart, int aEnd, int bStart, int bEnd) {
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.aEnd == aStart && last.bEnd == bStart) {
+                last.aEnd = aEnd;
+                last.bEnd = bEnd;
+                return;
+            }
+        }
+        edits.add(new Edit(aStart, aEnd, bStart, bEnd));
+    }
+}
@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A LockFile guards the update of one file by another process. Taking
+ * it creates FILE.lock, which fails while another process holds it.
+ * The new content is written into the lock file and flushed to disk,
+ * and committing renames the lock file over FILE in one step, so that
+ * a reader sees either the old or the new content, never part of it,
+ * and takes no lock. Rolling back deletes the lock file and leaves
+ * FILE as it was.
+ *
+ * @author Chloe Lin
+ */
+public class LockFile {
+
+    /**
+     * How long to wait for another process to release a lock.
+     */
+    static final long TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The file guarded by the lock.
+     */
+    private final Path target;
+    /**
+     * The lock file, or null once committed or rolled back.
+     */
+    private Path lock;
+
+    private LockFile(Path target, Path lock) {
+        this.target = target;
+        this.lock = lock;
+    }
+
+    /**
+     * Take the lock of FILE, waiting up to TIMEOUT_MILLIS for another
+     * process to release it.
+     * @param file the file to update
+     */
+    public static LockFile acquire(File file) {
+        LockFile lock = tryAcquire(file);
+        if (lock == null) {
+            Main.exitWithError("Another gitlet process holds " + file + ".lock.");
+        }
+        return lock;
+    }
+
+    /**
+     * Take the lock of FILE as acquire does, but return null instead of
+     * exiting if another process still holds it after TIMEOUT_MILLIS.
+     * @param file the file to update
+     */
+    static LockFile tryAcquire(File file) {
+        Path target = file.toPath();
+        Path lock = target.resolveSibling(target.getFileName() + ".lock");
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                Files.createDirectories(lock.getParent());
+                return new LockFile(target, Files.createFile(lock));
+            } catch (FileAlreadyExistsException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    return null;
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    /**
+     * Write BYTES as the new content of the file and flush them to disk.
+     * @param bytes the new content
+     */
+    public void write(byte[] bytes) {
+        try (FileChannel channel = FileChannel.open(lock,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            rollback();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replace the file with the content written and release the lock.
+     */
+    public void commit() {
+        commit(true);
+    }
+
+    /**
+     * Replace the file with the content written and release the lock,
+     * flushing the rename to disk if SYNC is true.
+     * @param sync whether to flush the directory of the file
+     */
+    void commit(boolean sync) {
+        try {
+            Files.move(lock, target,
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            lock = null;
+            if (sync) {
+                syncDirectory(target.getParent());
+            }
+        } catch (IOException e) {
+            rollback();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Release the lock without changing the file. Does nothing once the
+     * lock is committed or rolled back.
+     */
+    public void rollback() {
+        if (lock == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(lock);
+            lock = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flush the entries of the directory DIR to disk, so that a rename
+     * in it survives a crash. Systems that cannot open directories skip
+     * this.
+     */
+    static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            return;
+        }
+    }
+}
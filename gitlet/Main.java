@@ -2,7 +2,6 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Driver class for Gitlet, a Github-like version-control system.
@@ -15,14 +14,23 @@ public class Main {
      * Current Working Directory.
      */
     static final File CWD = new File(".");
+    /**
+     * The .gitlet of the working directory: the Gitlet directory, or a
+     * file naming the directory of a linked working tree.
+     */
+    static final File DOT_GITLET = new File(".gitlet");
+    /**
+     * directory for the HEAD and staging area of the working tree.
+     */
+    static final File WORKTREE_FOLDER = Worktree.resolve(DOT_GITLET);
     /**
      * Gitlet directory.
      */
-    static final File GITLET_FOLDER = new File(".gitlet");
+    static final File GITLET_FOLDER = Worktree.commonDir(WORKTREE_FOLDER);
     /**
      * directory for staging area and stores file/blob mapping.
      */
-    static final File STAGING_FOLDER = Utils.join(GITLET_FOLDER, "staging");
+    static final File STAGING_FOLDER = Utils.join(WORKTREE_FOLDER, "staging");
     /**
      * file for storing trackedFiles and file/blob mapping.
      */
@@ -30,7 +38,7 @@ public class Main {
     /**
      * directory for storing commits and blobs.
      */
-    static final File OBJECTS_FOLDER = Utils.join(".gitlet", "objects");
+    static final File OBJECTS_FOLDER = Utils.join(GITLET_FOLDER, "objects");
     /**
      * directory for storing commit objects.
      */
@@ -39,10 +47,18 @@ public class Main {
      * directory for storing blobs.
      */
     static final File BLOBS_FOLDER = Utils.join(OBJECTS_FOLDER, "blobs");
+    /**
+     * directory for storing the chunks of large files.
+     */
+    static final File CHUNKS_FOLDER = Utils.join(OBJECTS_FOLDER, "chunks");
+    /**
+     * directory for storing the chunk lists of large files.
+     */
+    static final File MANIFESTS_FOLDER = Utils.join(OBJECTS_FOLDER, "manifests");
     /**
      * commit hash of HEAD of the current branch.
      */
-    static final File HEAD = Utils.join(GITLET_FOLDER, "HEAD");
+    static final File HEAD = Utils.join(WORKTREE_FOLDER, "HEAD");
     /**
      * directory for storing all commit logs for HEAD and branches.
      */
@@ -55,6 +71,30 @@ public class Main {
      * directory for storing the HEAD pointers of each branch.
      */
     static final File HEADS_REFS_FOLDER = Utils.join(REFS_FOLDER, "heads");
+    /**
+     * file for the state of a rebase stopped on a conflict.
+     */
+    static final File REBASE_STATE = Utils.join(WORKTREE_FOLDER, "REBASE_STATE");
+    /**
+     * directory for recorded conflict resolutions.
+     */
+    static final File RR_CACHE_FOLDER = Utils.join(GITLET_FOLDER, "rr-cache");
+    /**
+     * file for the conflicted files waiting for a recorded resolution.
+     */
+    static final File MERGE_RR = Utils.join(WORKTREE_FOLDER, "MERGE_RR");
+    /**
+     * file for the names and paths of the remotes.
+     */
+    static final File REMOTES = Utils.join(GITLET_FOLDER, "remotes");
+    /**
+     * file for the commits of a shallow clone whose parents are missing.
+     */
+    static final File SHALLOW = Utils.join(GITLET_FOLDER, "shallow");
+    /**
+     * file for the path of the repository a blob-less clone fetches blobs from.
+     */
+    static final File PROMISOR = Utils.join(GITLET_FOLDER, "promisor");
     /**
      *  Object for a gitlet repository.
      */
@@ -70,8 +110,11 @@ public class Main {
             validateGitlet();
             setupPersistence();
             repo.initialize();
+        } else if (command.equals("clone")) {
+            repo.clone(args);
         } else {
             validateInitialization();
+            RefTransaction.recover(GITLET_FOLDER);
 
             switch (command) {
                 case "add":
@@ -111,6 +154,50 @@ public class Main {
                 case "merge":
                     repo.merge(args);
                     break;
+                case "diff":
+                    repo.diff(args);
+                    break;
+                case "diff-tree":
+                    repo.diffTree(args);
+                    break;
+                case "merge-tree":
+                    repo.mergeTree(args);
+                    break;
+                case "rebase":
+                    repo.rebase(args);
+                    break;
+                case "add-remote":
+                    repo.addRemote(args);
+                    break;
+                case "rm-remote":
+                    repo.rmRemote(args);
+                    break;
+                case "fetch":
+                    repo.fetch(args);
+                    break;
+                case "push":
+                    repo.push(args);
+                    break;
+                case "pull":
+                    repo.pull(args);
+                    break;
+                case "bundle":
+                    repo.bundle(args);
+                    break;
+                case "worktree":
+                    repo.worktree(args);
+                    break;
+                case "pack-refs":
+                    repo.packRefs(args);
+                    break;
+                case "reflog":
+                    repo.reflog(args);
+                    break;
+                case "http-serve":
+                    validateNumArgs(args);
+                    ObjectServer.serve(args.length == 3
+                            ? Integer.parseInt(args[2]) : ObjectServer.DEFAULT_PORT);
+                    break;
                 default:
                     validateInitialization();
                     validateCommand();
@@ -165,6 +252,8 @@ public class Main {
         OBJECTS_FOLDER.mkdir();
         COMMITS_FOLDER.mkdir();
         BLOBS_FOLDER.mkdir();
+        CHUNKS_FOLDER.mkdir();
+        MANIFESTS_FOLDER.mkdir();
         HEAD.createNewFile();
     }
 
@@ -175,16 +264,7 @@ public class Main {
      *  directory.
      */
     private static void validateInitialization() {
-        File[] directories = new File(".").listFiles(File::isDirectory);
-        boolean found = false;
-
-        for (File f : directories) {
-            if (f.getName().equals(".gitlet")) {
-                found = true;
-            }
-        }
-
-        if (!found) {
+        if (!DOT_GITLET.isDirectory() && !GITLET_FOLDER.isDirectory()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
     }
@@ -204,7 +284,7 @@ public class Main {
      *  system in the current directory.
      */
     private static void validateGitlet() {
-        if (GITLET_FOLDER.exists()) {
+        if (DOT_GITLET.exists()) {
             exitWithError("A Gitlet version-control system "
                     + "already exists in the current directory.");
         }
@@ -218,21 +298,16 @@ public class Main {
     }
     
     /**
-     *  print the message if a file does not exist.
+     *  print the message if a file or directory to be added does not exist.
      */
     private static void validateFileToBeAdded(String[] args) {
-        String fileName = args[1];
-        List<String> fileInCWD = Utils.plainFilenamesIn("./");
-        boolean found = false;
-
-        for (String file : fileInCWD) {
-            if (file.toLowerCase().equals(fileName.toLowerCase())) {
-                found = true;
-            }
+        if (args.length == 2 && args[1].equals("-A")) {
+            return;
         }
-
-        if (!found) {
-            exitWithError("File does not exist.");
+        for (int i = 1; i < args.length; i++) {
+            if (!Utils.join(CWD, args[i]).exists()) {
+                exitWithError("File does not exist.");
+            }
         }
     }
 
@@ -266,16 +341,92 @@ public class Main {
                 isValid = true;
             }
             break;
-        case "find":
         case "add":
+            if (n >= 2) {
+                isValid = true;
+            }
+            break;
+        case "rm-branch":
+            isValid = n >= 2;
+            break;
+        case "find":
         case "rm":
         case "branch":
-        case "rm-branch":
         case "reset":
+        case "rebase":
+        case "rm-remote":
             if (n == 2) {
                 isValid = true;
             }
             break;
+        case "merge-tree":
+        case "add-remote":
+        case "fetch":
+        case "push":
+        case "pull":
+            if (n == 3) {
+                isValid = true;
+            }
+            break;
+        case "diff":
+            if (n == 1 || (n == 2 && args[1].equals("--cached")) || n == 3) {
+                isValid = true;
+            }
+            break;
+        case "pack-refs":
+            isValid = n == 1;
+            break;
+        case "reflog":
+            if (n <= 2 || (n == 3 && args[1].equals("expire")
+                    && args[2].matches("[0-9]{1,6}"))) {
+                isValid = true;
+            }
+            break;
+        case "worktree":
+            if ((n == 4 && args[1].equals("add"))
+                    || (n == 2 && args[1].equals("list"))) {
+                isValid = true;
+            }
+            break;
+        case "http-serve":
+            if (n == 1 || (n == 3 && args[1].equals("--port")
+                    && args[2].matches("[0-9]{1,5}"))) {
+                isValid = true;
+            }
+            break;
+        case "bundle":
+            if ((n >= 4 && args[1].equals("create"))
+                    || (n == 3 && args[1].equals("unbundle"))) {
+                isValid = true;
+            }
+            break;
+        case "clone":
+            isValid = n >= 3;
+            for (int i = 1; i < n - 2 && isValid; i++) {
+                if (args[i].equals("--depth") && i + 1 < n - 2
+                        && args[i + 1].matches("[1-9][0-9]{0,8}")) {
+                    i += 1;
+                } else if (!args[i].equals("--filter=blob:none")) {
+                    isValid = false;
+                }
+            }
+            break;
+        case "diff-tree":
+            if (n >= 3 && n <= 5) {
+                int renameOptions = 0;
+                int formatOptions = 0;
+                for (int i = 1; i < n - 2; i++) {
+                    if (args[i].equals("-M") || args[i].equals("-C")) {
+                        renameOptions += 1;
+                    } else if (args[i].equals("--name-status")
+                            || args[i].equals("--stat") || args[i].equals("--numstat")) {
+                        formatOptions += 1;
+                    }
+                }
+                isValid = renameOptions <= 1 && formatOptions <= 1
+                        && renameOptions + formatOptions == n - 3;
+            }
+            break;
         case "commit":
             if (n == 1) {
                 validateCommitMessage();
@@ -0,0 +1,413 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * A MergeEngine merges two commits without touching the working
+ * directory, the staging area or any branch. The merged snapshot is
+ * built in memory, the merged and conflicted contents of files changed
+ * by both branches are saved straight into the object store, and the
+ * conflicts are returned as data. Writing the result to the working
+ * directory and committing it is left to the caller.
+ *
+ * @author Chloe Lin
+ */
+public class MergeEngine {
+
+    /**
+     * Files larger than this are not merged line by line, so that a
+     * merge never holds several copies of a large file in memory.
+     */
+    static final long MAX_LINE_MERGE_SIZE = 4 * 1024 * 1024;
+    /**
+     * The most KiB of file content that the line merges running in
+     * parallel hold in memory at once, counting each version of a file,
+     * the merged result and its copy for rerere.
+     */
+    static final int LINE_MERGE_MEMORY_KIB = 32 * 1024;
+    /**
+     * The KiB of LINE_MERGE_MEMORY_KIB not taken by a running line merge.
+     */
+    private static final Semaphore LINE_MERGE_MEMORY = new Semaphore(LINE_MERGE_MEMORY_KIB);
+
+    /**
+     * A file that could not be merged cleanly.
+     */
+    public static class Conflict {
+        /** The file name. */
+        private final String path;
+        /** content, modify/delete or binary. */
+        private final String type;
+        /** Blob SHA1 at the split point, or null. */
+        private final String base;
+        /** Blob SHA1 in the current branch, or null if deleted. */
+        private final String ours;
+        /** Blob SHA1 in the given branch, or null if deleted. */
+        private final String theirs;
+        /** Blob SHA1 of the file with conflict markers, or the version kept. */
+        private final String result;
+
+        Conflict(String path, String type, String base, String ours, String theirs,
+                 String result) {
+            this.path = path;
+            this.type = type;
+            this.base = base;
+            this.ours = ours;
+            this.theirs = theirs;
+            this.result = result;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getBase() {
+            return base;
+        }
+
+        public String getOurs() {
+            return ours;
+        }
+
+        public String getTheirs() {
+            return theirs;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        /**
+         * Return "content" if both branches changed the file, "binary" if
+         * it is a binary file changed by both, or "modify/delete" if one
+         * of them deleted it.
+         */
+        public String getType() {
+            return type;
+        }
+    }
+
+    /**
+     * The outcome of a merge: the merged snapshot, with conflicted files
+     * mapped to their blob with conflict markers, the files the merge
+     * removes, and the conflicts.
+     */
+    public static class MergeResult {
+        /** The merged file-blob mapping. */
+        private final Map<String, String> snapshot;
+        /** The files removed by the merge. */
+        private final HashSet<String> removed;
+        /** The conflicts, in file name order. */
+        private final List<Conflict> conflicts;
+        /** The files resolved with a recorded resolution. */
+        private final List<String> reused;
+
+        MergeResult(Map<String, String> snapshot, HashSet<String> removed,
+                    List<Conflict> conflicts, List<String> reused) {
+            this.snapshot = snapshot;
+            this.removed = removed;
+            this.conflicts = conflicts;
+            this.reused = reused;
+        }
+
+        public Map<String, String> getSnapshot() {
+            return snapshot;
+        }
+
+        public HashSet<String> getRemoved() {
+            return removed;
+        }
+
+        public List<Conflict> getConflicts() {
+            return Collections.unmodifiableList(conflicts);
+        }
+
+        public boolean hasConflicts() {
+            return !conflicts.isEmpty();
+        }
+
+        /**
+         * Return the files whose conflicts were resolved the way the same
+         * conflicts were resolved before.
+         */
+        public List<String> getReusedResolutions() {
+            return Collections.unmodifiableList(reused);
+        }
+    }
+
+    /**
+     * Merge the commits OURS and THEIRS against their latest common
+     * ancestor. If one is an ancestor of the other, the result is the
+     * snapshot of the other.
+     * @param ours the commit of the current branch
+     * @param theirs the commit of the given branch
+     */
+    public static MergeResult merge(Commit ours, Commit theirs) {
+        Commit splitPoint = latestCommonAncestor(ours, theirs);
+        Map<String, String> split = splitPoint == null
+                ? new TreeMap<>() : splitPoint.getSnapshot();
+        return merge(split, ours.getSnapshot(), theirs.getSnapshot());
+    }
+
+    /**
+     * Merge the snapshots CURR and GIVEN against SPLIT, following the
+     * files renamed by either of them. The files changed in both are
+     * merged in parallel on the common fork-join pool, and their results
+     * are collected in file name order.
+     * @param split snapshot of the split point
+     * @param curr snapshot of the current branch
+     * @param given snapshot of the given branch
+     */
+    public static MergeResult merge(Map<String, String> split,
+                                    Map<String, String> curr,
+                                    Map<String, String> given) {
+        Map<String, String> snapshot = new TreeMap<>();
+        HashSet<String> removed = new HashSet<>();
+        List<TreeMerge.Action> toMerge = new ArrayList<>();
+
+        for (TreeMerge.Action action : TreeMerge.classifyFollowingRenames(split, curr, given)) {
+            String fileName = action.getPath();
+            switch (action.getKind()) {
+                case CONFLICT:
+                    toMerge.add(action);
+                    break;
+                case BOTH_DELETED:
+                    removed.add(fileName);
+                    break;
+                default:
+                    if (action.getResult() != null) {
+                        snapshot.put(fileName, action.getResult());
+                    } else {
+                        removed.add(fileName);
+                    }
+            }
+        }
+
+        List<String> blobIds = new ArrayList<>();
+        toMerge.forEach(action -> {
+            blobIds.add(action.getBase());
+            blobIds.add(action.getOurs());
+            blobIds.add(action.getTheirs());
+        });
+        Promisor.prefetch(blobIds);
+
+        List<Conflict> conflicts = new ArrayList<>();
+        List<String> reused = new ArrayList<>();
+        List<FileMerge> merged = toMerge.parallelStream()
+                .map(MergeEngine::mergeFile)
+                .collect(Collectors.toList());
+        for (FileMerge file : merged) {
+            snapshot.put(file.path, file.blobSHA1);
+            if (file.conflict != null) {
+                conflicts.add(file.conflict);
+            }
+            if (file.reused) {
+                reused.add(file.path);
+            }
+        }
+        return new MergeResult(snapshot, removed, conflicts, reused);
+    }
+
+    /**
+     * The outcome of merging one file.
+     */
+    private static class FileMerge {
+        /** The file name. */
+        private final String path;
+        /** The blob SHA1 the file has after the merge. */
+        private final String blobSHA1;
+        /** The conflict of the file, or null if it merged cleanly. */
+        private final Conflict conflict;
+        /** Whether the file was resolved with a recorded resolution. */
+        private final boolean reused;
+
+        FileMerge(String path, String blobSHA1, Conflict conflict, boolean reused) {
+            this.path = path;
+            this.blobSHA1 = blobSHA1;
+            this.conflict = conflict;
+            this.reused = reused;
+        }
+    }
+
+    /**
+     * Merge a file changed in both branches into the object store and
+     * return its blob. When both branches still have the file, its
+     * lines are merged against the split point and only the regions
+     * changed differently by both are written as conflicts, unless the
+     * same conflicts have a recorded resolution. When one branch
+     * deleted it, or it is too large to merge line by line, the whole
+     * file is a conflict, streamed from the object store. A line merge
+     * waits until the memory it needs is within LINE_MERGE_MEMORY_KIB
+     * for all line merges running in parallel. Binary files
+     * are never merged: the current version is kept, or the given one
+     * if the current branch deleted it, and the conflict is recorded.
+     */
+    private static FileMerge mergeFile(TreeMerge.Action action) {
+        String fileName = action.getPath();
+        Blob base = action.getBase() == null ? null : Blob.load(fileName, action.getBase());
+        Blob ours = action.getOurs() == null ? null : Blob.load(fileName, action.getOurs());
+        Blob theirs = action.getTheirs() == null ? null
+                : Blob.load(fileName, action.getTheirs());
+
+        if (isBinary(base) || isBinary(ours) || isBinary(theirs)) {
+            String kept = ours != null ? ours.getBlobSHA1() : theirs.getBlobSHA1();
+            return new FileMerge(fileName, kept, new Conflict(fileName, "binary",
+                    action.getBase(), action.getOurs(), action.getTheirs(), kept), false);
+        }
+
+        try {
+            Blob merged;
+            String type;
+            boolean reused = false;
+            if (ours == null || theirs == null) {
+                merged = Blob.store(fileName, out -> writeWholeFileConflict(ours, theirs, out));
+                type = "modify/delete";
+            } else if (isTooLarge(base) || isTooLarge(ours) || isTooLarge(theirs)) {
+                merged = Blob.store(fileName, out -> writeWholeFileConflict(ours, theirs, out));
+                type = "content";
+            } else {
+                long size = (base == null ? 0 : base.size()) + ours.size() + theirs.size();
+                int kib = (int) Math.min(LINE_MERGE_MEMORY_KIB, 2 * size / 1024 + 1);
+                LINE_MERGE_MEMORY.acquireUninterruptibly(kib);
+                try {
+                    byte[] baseContent = base == null ? new byte[0] : base.getFileContent();
+                    byte[] oursContent = ours.getFileContent();
+                    byte[] theirsContent = theirs.getFileContent();
+                    int[] regions = new int[1];
+                    merged = Blob.store(fileName, out -> regions[0] =
+                            ContentMerge.merge(baseContent, oursContent, theirsContent, out));
+                    type = regions[0] > 0 ? "content" : null;
+                    if (type != null) {
+                        byte[] resolved = Rerere.resolve(merged.getFileContent());
+                        if (resolved != null) {
+                            merged = Blob.store(fileName, resolved);
+                            type = null;
+                            reused = true;
+                        }
+                    }
+                } finally {
+                    LINE_MERGE_MEMORY.release(kib);
+                }
+            }
+            Conflict conflict = type == null ? null : new Conflict(fileName, type,
+                    action.getBase(), action.getOurs(), action.getTheirs(),
+                    merged.getBlobSHA1());
+            return new FileMerge(fileName, merged.getBlobSHA1(), conflict, reused);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Return true if BLOB is present and looks binary.
+     */
+    private static boolean isBinary(Blob blob) {
+        return blob != null && blob.isBinary();
+    }
+
+    /**
+     * Return true if BLOB is present and too large to merge line by line.
+     */
+    static boolean isTooLarge(Blob blob) {
+        return blob != null && blob.size() > MAX_LINE_MERGE_SIZE;
+    }
+
+    /**
+     * Write a file deleted in one branch or too large to merge, with
+     * the whole of each version as one conflict region. The versions are
+     * copied from the object store through a fixed-size buffer.
+     */
+    private static void writeWholeFileConflict(Blob ours, Blob theirs, OutputStream out)
+            throws IOException {
+        out.write(ContentMerge.OURS_MARKER);
+        if (ours != null) {
+            try (InputStream in = ours.openStream()) {
+                in.transferTo(out);
+            }
+        }
+        out.write(ContentMerge.SEPARATOR_MARKER);
+        if (theirs != null) {
+            try (InputStream in = theirs.openStream()) {
+                in.transferTo(out);
+            }
+        }
+        out.write(ContentMerge.THEIRS_MARKER);
+    }
+
+    /**
+     * Return the latest common ancestor of two commits, or null if they
+     * only share the initial commit.
+     * @param currHead the commit of the current branch
+     * @param branchHead the commit of the given branch
+     */
+    public static Commit latestCommonAncestor(Commit currHead, Commit branchHead) {
+        HashSet<String> branchPath = new HashSet<>();
+        buildBranchHashSet(branchPath, branchHead);
+
+        HashMap<Commit, Integer> ancestors = new HashMap<>();
+
+        getAncestors(ancestors, branchPath, currHead, 0);
+        Commit LCA = null;
+        Integer minDepth = -1;
+
+        for (Map.Entry<Commit, Integer> entry : ancestors.entrySet()) {
+            Commit node = entry.getKey();
+            Integer depth = entry.getValue();
+            if (minDepth < 0) {
+                minDepth = depth;
+                LCA = node;
+            } else if (depth < minDepth) {
+                LCA = node;
+                minDepth = depth;
+            }
+        }
+
+        return LCA;
+    }
+
+    private static void getAncestors(HashMap<Commit, Integer> ancestors,
+                                     HashSet<String> branchPath,
+                                     Commit currHead,
+                                     Integer depth) {
+        if (currHead.getFirstParentSHA1().equals(Repo.INIT_PARENT_SHA1)) {
+            return;
+        }
+        if (branchPath.contains(currHead.getSHA())) {
+            ancestors.put(currHead, depth);
+        } else {
+            if (currHead.getFirstParentSHA1() != null) {
+                getAncestors(ancestors, branchPath, currHead.getParent(), depth + 1);
+            }
+            if (currHead.getSecondParentSHA1() != null) {
+                getAncestors(ancestors, branchPath, currHead.getParent2(), depth + 1);
+            }
+        }
+
+    }
+
+    private static void buildBranchHashSet(HashSet<String> branchSet, Commit branchHead) {
+        if (branchHead.getFirstParentSHA1().equals(Repo.INIT_PARENT_SHA1)) {
+            return;
+        }
+        branchSet.add(branchHead.getSHA());
+
+        if (branchHead.getFirstParentSHA1() != null) {
+            buildBranchHashSet(branchSet, branchHead.getParent());
+        }
+        if (branchHead.getSecondParentSHA1() != null) {
+            buildBranchHashSet(branchSet, branchHead.getParent2());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * An ObjectCache keeps the objects a command reads from one repository
+ * in memory, so that the same commit, index or blob read many times in
+ * a command is deserialized once. It has three sections with their own
+ * byte budgets, each evicting its least recently used objects:
+ * commits, trees, which are the staging index and the HEAD and branch
+ * files that hold the snapshot a command compares against, and blob
+ * content. Commits and blobs are named by their SHA1 and never change,
+ * so they are cached as long as they fit. A tree file can be replaced
+ * by this or any other process with one of the same size within the
+ * same clock tick, so its bytes are still read each time and a cached
+ * tree is only used while they are the bytes it was read from; only
+ * the deserialization is saved.
+ *
+ * Running with -Dgitlet.cache.stats prints the hits and misses of each
+ * section when the command ends.
+ *
+ * @author Chloe Lin
+ */
+public class ObjectCache {
+
+    /**
+     * The most bytes of serialized commits cached.
+     */
+    static final long COMMIT_BUDGET = 32L << 20;
+    /**
+     * The most bytes of index and reference files cached, counting
+     * each file twice, for its bytes and for its object.
+     */
+    static final long TREE_BUDGET = 8L << 20;
+    /**
+     * The most bytes of blob content cached.
+     */
+    static final long BLOB_BUDGET = 16L << 20;
+    /**
+     * Blobs larger than this are never cached.
+     */
+    static final long MAX_CACHED_BLOB = 1L << 20;
+
+    /**
+     * The cache of each repository by its .gitlet directory.
+     */
+    private static final Map<File, ObjectCache> CACHES = new HashMap<>();
+
+    /** The cached commits by file. */
+    private final Section commits = new Section("commits", COMMIT_BUDGET);
+    /** The cached index and reference files by file. */
+    private final Section trees = new Section("trees", TREE_BUDGET);
+    /** The cached blob content by blob SHA1. */
+    private final Section blobs = new Section("blobs", BLOB_BUDGET);
+
+    /**
+     * Return the cache of the repository whose .gitlet directory is
+     * GITLETDIR.
+     * @param gitletDir the .gitlet directory
+     */
+    public static synchronized ObjectCache of(File gitletDir) {
+        return CACHES.computeIfAbsent(gitletDir.getAbsoluteFile(), dir -> {
+            ObjectCache cache = new ObjectCache();
+            if (System.getProperty("gitlet.cache.stats") != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                        System.err.println("object cache " + dir + ": " + cache)));
+            }
+            return cache;
+        });
+    }
+
+    /**
+     * Return the cache of the current repository.
+     */
+    public static ObjectCache local() {
+        return of(Main.GITLET_FOLDER);
+    }
+
+    /**
+     * Return the commit stored in the object file FILE.
+     * @param file the object file of a commit
+     */
+    public Commit commit(File file) {
+        File key = file.getAbsoluteFile();
+        Commit commit = (Commit) commits.get(key, null);
+        if (commit == null) {
+            commit = Utils.readObject(file, Commit.class);
+            commits.put(key, null, commit, file.length());
+        }
+        return commit;
+    }
+
+    /**
+     * Return the object of class EXPECTEDCLASS stored in the index or
+     * reference file FILE. The object may be shared with other callers,
+     * so it must not be changed.
+     * @param file an index or reference file
+     * @param expectedClass the class of the object
+     */
+    public <T extends Serializable> T tree(File file, Class<T> expectedClass) {
+        File key = file.getAbsoluteFile();
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return Utils.readObject(file, expectedClass);
+        }
+        T tree = expectedClass.cast(trees.get(key, content));
+        if (tree == null) {
+            tree = Utils.deserialize(content, expectedClass);
+            trees.put(key, content, tree, 2L * content.length);
+        }
+        return tree;
+    }
+
+    /**
+     * Return true if the content of the blob BLOBSHA1 is cached, and so
+     * known to be in the object store.
+     * @param blobSHA1 the SHA1 of a blob
+     */
+    public boolean hasBlob(String blobSHA1) {
+        return blobs.contains(blobSHA1);
+    }
+
+    /**
+     * Return the content of the blob BLOBSHA1, read with READ unless it
+     * is cached. The array may be shared with other callers, so it must
+     * not be changed.
+     * @param blobSHA1 the SHA1 of a blob
+     * @param read reads the content from the object store
+     */
+    public byte[] blob(String blobSHA1, Supplier<byte[]> read) {
+        byte[] content = (byte[]) blobs.get(blobSHA1, null);
+        if (content == null) {
+            content = read.get();
+            if (content.length <= MAX_CACHED_BLOB) {
+                blobs.put(blobSHA1, null, content, content.length);
+            }
+        }
+        return content;
+    }
+
+    @Override
+    public String toString() {
+        return commits + ", " + trees + ", " + blobs;
+    }
+
+    /**
+     * One section of the cache, holding objects up to a byte budget and
+     * counting its hits and misses.
+     */
+    private static class Section {
+        /** The name of the section. */
+        private final String name;
+        /** The most bytes of objects held. */
+        private final long budget;
+        /** The cached objects by key, in access order. */
+        private final LinkedHashMap<Object, Entry> entries =
+                new LinkedHashMap<>(256, 0.75f, true);
+        /** The total number of bytes held. */
+        private long bytes;
+        /** The number of lookups that found their object. */
+        private long hits;
+        /** The number of lookups that did not. */
+        private long misses;
+
+        Section(String name, long budget) {
+            this.name = name;
+            this.budget = budget;
+        }
+
+        /**
+         * Return the object cached under KEY with the version VERSION,
+         * or null. Array versions are compared by content.
+         */
+        synchronized Object get(Object key, Object version) {
+            Entry entry = entries.get(key);
+            if (entry != null
+                    && (version == null || Objects.deepEquals(version, entry.version))) {
+                hits += 1;
+                return entry.value;
+            }
+            misses += 1;
+            return null;
+        }
+
+        /**
+         * Return true if an object is cached under KEY.
+         */
+        synchronized boolean contains(Object key) {
+            return entries.containsKey(key);
+        }
+
+        /**
+         * Cache VALUE of SIZE bytes under KEY with the version VERSION,
+         * evicting the least recently used objects beyond the budget.
+         */
+        synchronized void put(Object key, Object version, Object value, long size) {
+            if (size > budget) {
+                return;
+            }
+            Entry old = entries.put(key, new Entry(version, value, size));
+            if (old != null) {
+                bytes -= old.size;
+            }
+            bytes += size;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > budget && eldest.hasNext()) {
+                bytes -= eldest.next().size;
+                eldest.remove();
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return name + " " + hits + " hits " + misses + " misses "
+                    + entries.size() + " objects " + bytes + " bytes";
+        }
+    }
+
+    /**
+     * A cached object.
+     */
+    private static class Entry {
+        /** The bytes the object was read from, or null if it never changes. */
+        private final Object version;
+        /** The object. */
+        private final Object value;
+        /** The bytes the object is counted as. */
+        private final long size;
+
+        Entry(Object version, Object value, long size) {
+            this.version = version;
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package gitlet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An ObjectServer serves the current repository over HTTP on the
+ * loopback interface, so that many clients on the same host can fetch
+ * from it. GET /refs lists the branches, one "[commit id] [branch
+ * name]" line each. POST /fetch takes "want [commit id]" and "have
+ * [commit id]" lines and streams back a pack of the commits reachable
+ * from the wants down to the haves, with the blobs not in the snapshots
+ * of the haves. Each request runs on its own virtual thread where the
+ * JDK has them. Small objects are kept in a shared in-memory cache, so
+ * concurrent fetches of the same history read each object from disk
+ * once.
+ *
+ * @author Chloe Lin
+ */
+public class ObjectServer {
+
+    /**
+     * The port served when none is given.
+     */
+    static final int DEFAULT_PORT = 8080;
+    /**
+     * The most bytes of objects the cache holds.
+     */
+    static final long CACHE_BUDGET = 64L * 1024 * 1024;
+    /**
+     * Objects larger than this are never cached.
+     */
+    static final long MAX_CACHED_OBJECT = 1024 * 1024;
+
+    /**
+     * The repository served, reading objects through the cache.
+     */
+    private final CachedStore store = new CachedStore(Main.GITLET_FOLDER);
+
+    /**
+     * Serve the current repository on PORT until the process is stopped.
+     * @param port the port to listen on
+     */
+    public static void serve(int port) throws IOException {
+        ObjectServer server = new ObjectServer();
+        HttpServer http = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/refs", server::handleRefs);
+        http.createContext("/fetch", server::handleFetch);
+        http.setExecutor(newExecutor());
+        http.start();
+        System.out.println("Serving " + System.getProperty("user.dir")
+                + " on http://localhost:" + http.getAddress().getPort());
+    }
+
+    /**
+     * Return an executor that runs each task on a new virtual thread,
+     * or on a pooled thread if the JDK has no virtual threads.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * List the branches and their head commits.
+     */
+    private void handleRefs(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder refs = new StringBuilder();
+            for (String name : store.branchNames()) {
+                refs.append(store.branchHead(name).getSHA()).append(' ')
+                        .append(name).append('\n');
+            }
+            byte[] body = refs.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    /**
+     * Stream a pack of the commits and blobs the client is missing.
+     */
+    private void handleFetch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Set<String> wants = new LinkedHashSet<>();
+            Set<String> haves = new HashSet<>();
+            String request = new String(exchange.getRequestBody().readAllBytes(),
+                    StandardCharsets.UTF_8);
+            for (String line : request.split("\n")) {
+                String[] words = line.trim().split(" ");
+                if (words.length != 2 || words[1].length() != Utils.UID_LENGTH) {
+                    continue;
+                }
+                if (words[0].equals("want") && store.hasCommit(words[1])) {
+                    wants.add(words[1]);
+                } else if (words[0].equals("have") && store.hasCommit(words[1])) {
+                    haves.add(words[1]);
+                }
+            }
+            if (wants.isEmpty()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            Set<String> haveBlobs = new HashSet<>();
+            for (String sha1 : haves) {
+                haveBlobs.addAll(store.loadCommit(sha1).getSnapshot().values());
+            }
+            Set<String> commits = new LinkedHashSet<>();
+            for (String want : wants) {
+                commits.addAll(Pack.missingCommits(store, want,
+                        sha1 -> haves.contains(sha1) || commits.contains(sha1)));
+            }
+            Set<String> blobs = Pack.missingBlobs(store, commits, haveBlobs::contains);
+            exchange.getResponseHeaders().set("Content-Type", "application/x-gitlet-pack");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                Pack.write(store, commits, blobs, chunkId -> false, out);
+            }
+        }
+    }
+
+    /**
+     * An ObjectStore that keeps the bytes of the small object files it
+     * reads in a cache shared by all requests, and evicts the least
+     * recently used ones beyond CACHE_BUDGET.
+     */
+    private static class CachedStore extends ObjectStore {
+        /** The cached object bytes by file, in access order. */
+        private final LinkedHashMap<File, byte[]> cache =
+                new LinkedHashMap<>(1024, 0.75f, true);
+        /** The total number of cached bytes. */
+        private long cachedBytes;
+
+        CachedStore(File gitletDir) {
+            super(gitletDir);
+        }
+
+        @Override
+        public void copyObject(File file, DataOutputStream data) throws IOException {
+            byte[] bytes = get(file);
+            if (bytes == null) {
+                super.copyObject(file, data);
+                return;
+            }
+            data.writeLong(bytes.length);
+            data.write(bytes);
+        }
+
+        @Override
+        public Commit loadCommit(String sha1) {
+            byte[] bytes;
+            try {
+                bytes = get(commitFile(sha1));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return bytes != null ? Utils.deserialize(bytes, Commit.class)
+                    : super.loadCommit(sha1);
+        }
+
+        /**
+         * Return the bytes of FILE from the cache, reading them into it
+         * first, or null if the file is too large to cache.
+         */
+        private byte[] get(File file) throws IOException {
+            synchronized (cache) {
+                byte[] bytes = cache.get(file);
+                if (bytes != null) {
+                    return bytes;
+                }
+            }
+            if (file.length() > MAX_CACHED_OBJECT) {
+                return null;
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            synchronized (cache) {
+                if (cache.put(file, bytes) == null) {
+                    cachedBytes += bytes.length;
+                }
+                Iterator<Map.Entry<File, byte[]>> eldest = cache.entrySet().iterator();
+                while (cachedBytes > CACHE_BUDGET && eldest.hasNext()) {
+                    cachedBytes -= eldest.next().getValue().length;
+                    eldest.remove();
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An ObjectStore gives access to the objects and branches of a Gitlet
+ * repository by the path of its .gitlet directory, so that another
+ * repository on the same machine can be read and written the same way
+ * as the current one.
+ *
+ * @author Chloe Lin
+ */
+public class ObjectStore {
+
+    /**
+     * The .gitlet directory of the repository.
+     */
+    private final File gitletDir;
+
+    /**
+     * Open the repository whose .gitlet directory is GITLETDIR.
+     * @param gitletDir the .gitlet directory
+     */
+    public ObjectStore(File gitletDir) {
+        this.gitletDir = gitletDir;
+    }
+
+    /**
+     * Return the object store of the current repository.
+     */
+    public static ObjectStore local() {
+        return new ObjectStore(Main.GITLET_FOLDER);
+    }
+
+    /**
+     * Return the .gitlet directory of the repository.
+     */
+    public File getDir() {
+        return gitletDir;
+    }
+
+    /**
+     * Return true if the repository exists.
+     */
+    public boolean exists() {
+        return commitFile(Repo.SENTINEL_COMMIT_ID).isFile();
+    }
+
+    /**
+     * Create the directories of an empty repository.
+     */
+    public void create() {
+        Utils.join(gitletDir, "staging").mkdirs();
+        Utils.join(gitletDir, "refs", "heads").mkdirs();
+        Utils.join(gitletDir, "logs").mkdirs();
+        for (String folder : new String[] {"commits", "blobs", "chunks", "manifests"}) {
+            Utils.join(gitletDir, "objects", folder).mkdirs();
+        }
+    }
+
+    /**
+     * Return the file of the commit with the given SHA1.
+     * @param sha1 the SHA1 of a commit
+     */
+    public File commitFile(String sha1) {
+        return Utils.join(gitletDir, "objects", "commits", sha1);
+    }
+
+    /**
+     * Return the file of the unchunked blob with the given SHA1.
+     * @param blobSHA1 the SHA1 of a blob
+     */
+    public File blobFile(String blobSHA1) {
+        return Utils.join(gitletDir, "objects", "blobs", blobSHA1);
+    }
+
+    /**
+     * Return the chunk list of the chunked blob with the given SHA1.
+     * @param blobSHA1 the SHA1 of a blob
+     */
+    public File manifestFile(String blobSHA1) {
+        return Utils.join(gitletDir, "objects", "manifests", blobSHA1);
+    }
+
+    /**
+     * Return the file of the chunk with the given SHA1.
+     * @param chunkId the SHA1 of a chunk
+     */
+    public File chunkFile(String chunkId) {
+        return Utils.join(gitletDir, "objects", "chunks", chunkId);
+    }
+
+    /**
+     * Return true if the repository has the commit with the given SHA1.
+     * @param sha1 the SHA1 of a commit
+     */
+    public boolean hasCommit(String sha1) {
+        return commitFile(sha1).isFile();
+    }
+
+    /**
+     * Return true if the repository has the blob with the given SHA1,
+     * chunked or not.
+     * @param blobSHA1 the SHA1 of a blob
+     */
+    public boolean hasBlob(String blobSHA1) {
+        return blobFile(blobSHA1).isFile() || manifestFile(blobSHA1).isFile();
+    }
+
+    /**
+     * Return true if the repository has the chunk with the given SHA1.
+     * @param chunkId the SHA1 of a chunk
+     */
+    public boolean hasChunk(String chunkId) {
+        return chunkFile(chunkId).isFile();
+    }
+
+    /**
+     * Return the commit with the given SHA1.
+     * @param sha1 the SHA1 of a commit
+     */
+    public Commit loadCommit(String sha1) {
+        return ObjectCache.of(gitletDir).commit(commitFile(sha1));
+    }
+
+    /**
+     * Write the length of the object file FILE and then its bytes to
+     * DATA, as the body of a pack entry. The bytes are streamed, so an
+     * object of any size is copied without holding it in memory.
+     * @param file an object file of the repository
+     * @param data the pack being written
+     */
+    public void copyObject(File file, DataOutputStream data) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            data.writeLong(file.length());
+            in.transferTo(data);
+        }
+    }
+
+    /**
+     * Return the SHA1s of the chunks of a chunked blob, in order.
+     * @param blobSHA1 the SHA1 of a chunked blob
+     */
+    public List<String> chunkIds(String blobSHA1) {
+        List<String> chunkIds = new ArrayList<>();
+        for (String line : Utils.readContentsAsString(manifestFile(blobSHA1)).split("\n")) {
+            if (!line.isEmpty()) {
+                chunkIds.add(line);
+            }
+        }
+        return chunkIds;
+    }
+
+    /**
+     * Return a stream over the content of the blob with the given SHA1.
+     * @param blobSHA1 the SHA1 of a blob
+     */
+    public InputStream openBlob(String blobSHA1) throws IOException {
+        if (!manifestFile(blobSHA1).isFile()) {
+            return new FileInputStream(blobFile(blobSHA1));
+        }
+        List<InputStream> chunks = new ArrayList<>();
+        for (String chunkId : chunkIds(blobSHA1)) {
+            chunks.add(new FileInputStream(chunkFile(chunkId)));
+        }
+        return new SequenceInputStream(Collections.enumeration(chunks));
+    }
+
+    /**
+     * Return the reference file of the branch NAME. Branch names may
+     * contain '/', as the branches fetched from a remote do.
+     * @param name the name of a branch
+     */
+    public File branchFile(String name) {
+        return Utils.join(Utils.join(gitletDir, "refs", "heads"), name.split("/"));
+    }
+
+    /**
+     * Return the reflog of the branch NAME.
+     * @param name the name of a branch
+     */
+    public File branchLog(String name) {
+        return Utils.join(Utils.join(gitletDir, "logs", "refs", "heads"), name.split("/"));
+    }
+
+    /**
+     * Return the packed-refs file of the repository.
+     */
+    public PackedRefs packedRefs() {
+        return new PackedRefs(gitletDir);
+    }
+
+    /**
+     * Return true if the repository has the branch NAME.
+     * @param name the name of a branch
+     */
+    public boolean hasBranch(String name) {
+        return branchFile(name).isFile() || packedRefs().find(name) != null;
+    }
+
+    /**
+     * Return the SHA1 of the head commit of the branch NAME, from its
+     * loose file or else from the packed-refs file, or null if there is
+     * no such branch.
+     * @param name the name of a branch
+     */
+    public String branchSHA1(String name) {
+        File file = branchFile(name);
+        if (file.isFile()) {
+            return Branch.load(file).getHeadSHA();
+        }
+        return packedRefs().find(name);
+    }
+
+    /**
+     * Return the names of all branches, loose or packed, in order.
+     */
+    public List<String> branchNames() {
+        Set<String> names = new TreeSet<>(packedRefs().readAll().keySet());
+        names.addAll(looseBranchNames());
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Return the names of the branches that have a loose file.
+     */
+    private List<String> looseBranchNames() {
+        List<String> names = new ArrayList<>();
+        addBranchNames(Utils.join(gitletDir, "refs", "heads"), "", names);
+        return names;
+    }
+
+    /**
+     * Add the names of the branches under DIR to NAMES, with PREFIX.
+     */
+    private static void addBranchNames(File dir, String prefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addBranchNames(file, prefix + file.getName() + "/", names);
+            } else {
+                names.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Return the name of the branch checked out in the repository.
+     */
+    public String currentBranchName() {
+        return Branch.load(Utils.join(gitletDir, "HEAD")).getName();
+    }
+
+    /**
+     * Return the head commit of the branch NAME.
+     * @param name the name of a branch
+     */
+    public Commit branchHead(String name) {
+        File file = branchFile(name);
+        if (file.isFile()) {
+            return Branch.load(file).getHEAD();
+        }
+        return loadCommit(packedRefs().find(name));
+    }
+
+    /**
+     * Point the branch NAME at COMMIT, creating it if needed. If a
+     * working tree of the repository has the branch checked out, its
+     * HEAD is moved as well.
+     * @param name the name of a branch
+     * @param commit the new head of the branch
+     * @param reason why the branch is moved, for its reflog
+     */
+    public void setBranchHead(String name, Commit commit, String reason) {
+        compareAndSetBranchHead(name, null, commit, reason);
+    }
+
+    /**
+     * Point the branch NAME at COMMIT as setBranchHead does, but only
+     * if it still points at the commit OLDSHA1, and return whether it
+     * was moved.
+     * @param name the name of a branch
+     * @param oldSHA1 the SHA1 of the commit the branch is expected at,
+     *                or null to move it whatever it points at
+     * @param commit the new head of the branch
+     * @param reason why the branch is moved, for its reflog
+     */
+    public boolean compareAndSetBranchHead(String name, String oldSHA1, Commit commit,
+                                           String reason) {
+        RefTransaction transaction = new RefTransaction(this, reason)
+                .update(name, oldSHA1, commit);
+        for (File head : Worktree.heads(gitletDir).keySet()) {
+            if (head.isFile() && Branch.load(head).getName().equals(name)) {
+                transaction.updateHead(head, name, commit);
+            }
+        }
+        return transaction.commit();
+    }
+
+    /**
+     * Write the loose file of the branch NAME pointing at COMMIT under
+     * its lock and log the update, unless OLDSHA1 is not null and the branch, loose or
+     * packed, no longer points at it. Return true if it was written.
+     * @param name the name of a branch
+     * @param oldSHA1 the SHA1 of the commit the branch is expected at,
+     *                or null
+     * @param commit the new head of the branch
+     * @param reason why the branch is written, for its reflog
+     */
+    public boolean writeBranch(String name, String oldSHA1, Commit commit, String reason) {
+        LockFile lock = LockFile.acquire(branchFile(name));
+        try {
+            String current = branchSHA1(name);
+            if (oldSHA1 != null && !oldSHA1.equals(current)) {
+                return false;
+            }
+            Reflog.append(branchLog(name), current, commit.getSHA(), reason);
+            lock.write(Utils.serialize(new Branch(name, commit)));
+            lock.commit();
+            return true;
+        } finally {
+            lock.rollback();
+        }
+    }
+
+    /**
+     * Move all loose branches into the packed-refs file and delete
+     * their loose files, and return their number. A loose file moved
+     * by another process meanwhile is kept, and still overrides the
+     * packed branch.
+     */
+    public int packRefs() {
+        PackedRefs packed = packedRefs();
+        Map<String, String> loose = new TreeMap<>();
+        LockFile lock = LockFile.acquire(packed.getFile());
+        try {
+            TreeMap<String, String> refs = packed.readAll();
+            for (String name : looseBranchNames()) {
+                loose.put(name, Branch.load(branchFile(name)).getHeadSHA());
+            }
+            refs.putAll(loose);
+            PackedRefs.write(lock, refs);
+            lock.commit();
+        } finally {
+            lock.rollback();
+        }
+        loose.forEach((name, sha1) -> {
+            LockFile branchLock = LockFile.acquire(branchFile(name));
+            try {
+                File file = branchFile(name);
+                if (file.isFile() && Branch.load(file).getHeadSHA().equals(sha1)) {
+                    file.delete();
+                }
+            } finally {
+                branchLock.rollback();
+            }
+            deleteEmptyDirs(name);
+        });
+        return loose.size();
+    }
+
+    /**
+     * Delete the directories of the branch name NAME left empty by
+     * deleting its loose file.
+     * @param name the name of a deleted branch
+     */
+    public void deleteEmptyDirs(String name) {
+        File heads = Utils.join(gitletDir, "refs", "heads");
+        File dir = branchFile(name).getParentFile();
+        while (!dir.equals(heads) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+}
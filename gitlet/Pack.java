@@ -0,0 +1,336 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A Pack is a single stream of the objects one repository is missing
+ * from another: chunks, blobs and chunk lists first, then commits,
+ * parents before children, so that a commit is never stored before the
+ * contents it refers to. Each object is written as its type, its SHA1,
+ * its length and its bytes, copied straight from the object store. The
+ * objects to send are found by walking back from the commits the
+ * receiver wants until reaching commits it already has, so the size of
+ * a pack depends on the new history only.
+ *
+ * @author Chloe Lin
+ */
+public class Pack {
+
+    /**
+     * The first bytes of a pack.
+     */
+    static final String MAGIC = "GITLETPACK";
+    /**
+     * The version of the pack format.
+     */
+    static final int VERSION = 1;
+    /**
+     * Type of a commit entry.
+     */
+    private static final byte COMMIT = 'c';
+    /**
+     * Type of an unchunked blob entry.
+     */
+    private static final byte BLOB = 'b';
+    /**
+     * Type of a chunk list entry.
+     */
+    private static final byte MANIFEST = 'm';
+    /**
+     * Type of a chunk entry.
+     */
+    private static final byte CHUNK = 'k';
+    /**
+     * Type of the entry that ends a pack.
+     */
+    private static final byte END = 0;
+    /**
+     * The classes a commit entry may be made of.
+     */
+    private static final ObjectInputFilter COMMIT_CLASSES =
+            ObjectInputFilter.Config.createFilter("maxdepth=8;gitlet.Commit;"
+                    + "java.lang.String;java.util.HashMap;java.util.TreeMap;"
+                    + "java.util.HashSet;java.util.Map$Entry;!*");
+
+    /**
+     * Return the commits of SOURCE reachable from WANT that the receiver
+     * does not have, parents first. The walk stops at the commits HAVE
+     * accepts, whose ancestors the receiver has too.
+     * @param source the repository the commits are read from
+     * @param want the SHA1 of the commit the receiver wants
+     * @param have whether the receiver has a commit
+     */
+    public static List<String> missingCommits(ObjectStore source, String want,
+                                              Predicate<String> have) {
+        List<String> commits = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Deque<Boolean> expanded = new ArrayDeque<>();
+        stack.push(want);
+        expanded.push(false);
+        while (!stack.isEmpty()) {
+            String sha1 = stack.pop();
+            if (expanded.pop()) {
+                commits.add(sha1);
+                continue;
+            }
+            if (sha1.equals(Repo.INIT_PARENT_SHA1)
+                    || !seen.add(sha1) || have.test(sha1)) {
+                continue;
+            }
+            Commit commit = source.loadCommit(sha1);
+            stack.push(sha1);
+            expanded.push(true);
+            for (String parent : new String[] {commit.getSecondParentSHA1(),
+                    commit.getFirstParentSHA1()}) {
+                if (parent != null) {
+                    stack.push(parent);
+                    expanded.push(false);
+                }
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Return the blobs of COMMITS in SOURCE that HAVE does not accept.
+     * @param source the repository the commits are read from
+     * @param commits the SHA1s of the commits
+     * @param have whether the receiver has a blob
+     */
+    public static Set<String> missingBlobs(ObjectStore source, Collection<String> commits,
+                                           Predicate<String> have) {
+        Set<String> blobs = new LinkedHashSet<>();
+        Set<String> seen = new HashSet<>();
+        for (String sha1 : commits) {
+            for (String blobSHA1 : source.loadCommit(sha1).getSnapshot().values()) {
+                if (seen.add(blobSHA1) && !have.test(blobSHA1)) {
+                    blobs.add(blobSHA1);
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Write COMMITS and BLOBS of SOURCE to OUT as a pack. Chunked blobs
+     * are sent with the chunks HASCHUNK does not accept.
+     * @param source the repository the objects are read from
+     * @param commits the SHA1s of the commits, parents first
+     * @param blobs the SHA1s of the blobs
+     * @param hasChunk whether the receiver has a chunk
+     * @param out where the pack is written
+     */
+    public static void write(ObjectStore source, Collection<String> commits,
+                             Collection<String> blobs, Predicate<String> hasChunk,
+                             OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(out, Utils.BUFFER_SIZE));
+        data.writeUTF(MAGIC);
+        data.writeInt(VERSION);
+        Set<String> chunks = new HashSet<>();
+        for (String blobSHA1 : blobs) {
+            if (source.manifestFile(blobSHA1).isFile()) {
+                for (String chunkId : source.chunkIds(blobSHA1)) {
+                    if (chunks.add(chunkId) && !hasChunk.test(chunkId)) {
+                        writeEntry(source, data, CHUNK, chunkId, source.chunkFile(chunkId));
+                    }
+                }
+                writeEntry(source, data, MANIFEST, blobSHA1, source.manifestFile(blobSHA1));
+            } else {
+                writeEntry(source, data, BLOB, blobSHA1, source.blobFile(blobSHA1));
+            }
+        }
+        for (String sha1 : commits) {
+            writeEntry(source, data, COMMIT, sha1, source.commitFile(sha1));
+        }
+        data.writeByte(END);
+        data.flush();
+    }
+
+    /**
+     * Write one object to a pack.
+     */
+    private static void writeEntry(ObjectStore source, DataOutputStream data, byte type,
+                                   String sha1, File file) throws IOException {
+        data.writeByte(type);
+        data.writeUTF(sha1);
+        source.copyObject(file, data);
+    }
+
+    /**
+     * Read a pack from IN into TARGET and return the number of objects
+     * stored. Each object is written to a temporary file and renamed
+     * into place. Every object is checked against its SHA1 first: blobs
+     * and chunks by their content, chunk lists by the content of their
+     * chunks, and commits by the id their content hashes to.
+     * @param in the pack
+     * @param target the repository the objects are stored in
+     */
+    public static int read(InputStream in, ObjectStore target) throws IOException {
+        DataInputStream data = new DataInputStream(
+                new BufferedInputStream(in, Utils.BUFFER_SIZE));
+        if (!data.readUTF().equals(MAGIC) || data.readInt() != VERSION) {
+            throw new IOException("not a gitlet pack");
+        }
+        int count = 0;
+        byte type;
+        while ((type = data.readByte()) != END) {
+            String sha1 = data.readUTF();
+            long length = data.readLong();
+            if (!Utils.isSHA1(sha1) || length < 0) {
+                throw new IOException("bad pack entry " + sha1);
+            }
+            File file;
+            switch (type) {
+                case COMMIT:
+                    file = target.commitFile(sha1);
+                    break;
+                case BLOB:
+                    file = target.blobFile(sha1);
+                    break;
+                case MANIFEST:
+                    file = target.manifestFile(sha1);
+                    break;
+                case CHUNK:
+                    file = target.chunkFile(sha1);
+                    break;
+                default:
+                    throw new IOException("bad pack entry " + type);
+            }
+            readEntry(data, length, file, type, sha1, target);
+            count += 1;
+        }
+        return count;
+    }
+
+    /**
+     * Copy LENGTH bytes of a pack into FILE, unless it already exists.
+     * The bytes must be an object of type TYPE with the SHA1 SHA1, whose
+     * chunks, if it is a chunk list, are in TARGET.
+     */
+    private static void readEntry(DataInputStream data, long length, File file,
+                                  byte type, String sha1, ObjectStore target)
+            throws IOException {
+        file.getParentFile().mkdirs();
+        File tmp = File.createTempFile("pack", ".tmp", file.getParentFile());
+        MessageDigest md = newDigest();
+        try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp.toPath()), Utils.BUFFER_SIZE), md)) {
+            byte[] buffer = new byte[Utils.BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int n = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new IOException("truncated pack");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (file.exists()) {
+            tmp.delete();
+            return;
+        }
+        boolean valid;
+        switch (type) {
+            case COMMIT:
+                valid = isCommit(tmp, sha1);
+                break;
+            case MANIFEST:
+                valid = isManifest(tmp, sha1, target);
+                break;
+            default:
+                valid = Utils.toHex(md.digest()).equals(sha1);
+        }
+        if (!valid) {
+            tmp.delete();
+            throw new IOException("corrupt object " + sha1);
+        } else {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Return true if FILE holds a commit whose content hashes to SHA1.
+     * Only the classes a commit is made of are deserialized.
+     */
+    private static boolean isCommit(File file, String sha1) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                Files.newInputStream(file.toPath()), Utils.BUFFER_SIZE))) {
+            in.setObjectInputFilter(COMMIT_CLASSES);
+            Object object = in.readObject();
+            return object instanceof Commit
+                    && ((Commit) object).getSHA().equals(sha1)
+                    && ((Commit) object).computeSHA().equals(sha1);
+        } catch (ClassNotFoundException | ClassCastException
+                 | InvalidClassException | StreamCorruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return true if FILE lists chunks of TARGET whose content, joined,
+     * hashes to BLOBSHA1.
+     */
+    private static boolean isManifest(File file, String blobSHA1, ObjectStore target)
+            throws IOException {
+        MessageDigest md = newDigest();
+        byte[] buffer = new byte[Utils.BUFFER_SIZE];
+        for (String chunkId : Utils.readContentsAsString(file).split("\n")) {
+            if (chunkId.isEmpty()) {
+                continue;
+            }
+            if (!Utils.isSHA1(chunkId) || !target.hasChunk(chunkId)) {
+                return false;
+            }
+            try (InputStream in = Files.newInputStream(target.chunkFile(chunkId).toPath())) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    md.update(buffer, 0, n);
+                }
+            }
+        }
+        return Utils.toHex(md.digest()).equals(blobSHA1);
+    }
+
+    /**
+     * Return a new SHA-1 message digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * PackedRefs is the packed-refs file of a repository, which holds many
+ * branches in one file instead of one file each. After a header line,
+ * each line is "[commit id] [branch name]", sorted by branch name, so
+ * that a branch is found by a binary search over the file mapped into
+ * memory, without reading it all. A branch that also has a loose file
+ * under refs/heads is given by the loose file.
+ *
+ * @author Chloe Lin
+ */
+public class PackedRefs {
+
+    /**
+     * The first line of a packed-refs file.
+     */
+    static final String HEADER = "# gitlet packed-refs, sorted\n";
+
+    /**
+     * The packed-refs file.
+     */
+    private final File file;
+
+    /**
+     * The packed refs of the repository whose .gitlet directory is
+     * GITLETDIR.
+     * @param gitletDir the .gitlet directory
+     */
+    PackedRefs(File gitletDir) {
+        this.file = Utils.join(gitletDir, "packed-refs");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Return the commit id of the packed branch NAME, or null.
+     * @param name the name of a branch
+     */
+    public String find(String name) {
+        ByteBuffer bytes = map();
+        if (bytes == null) {
+            return null;
+        }
+        int lo = HEADER.length();
+        int hi = bytes.limit();
+        while (lo < hi) {
+            int start = (lo + hi) >>> 1;
+            while (start > lo && bytes.get(start - 1) != '\n') {
+                start -= 1;
+            }
+            int end = start;
+            while (end < hi && bytes.get(end) != '\n') {
+                end += 1;
+            }
+            int cmp = nameAt(bytes, start, end).compareTo(name);
+            if (cmp == 0) {
+                return textAt(bytes, start, start + Utils.UID_LENGTH);
+            } else if (cmp < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the commit ids of all packed branches by name, in order.
+     */
+    public TreeMap<String, String> readAll() {
+        TreeMap<String, String> refs = new TreeMap<>();
+        ByteBuffer bytes = map();
+        if (bytes == null) {
+            return refs;
+        }
+        int start = HEADER.length();
+        while (start < bytes.limit()) {
+            int end = start;
+            while (end < bytes.limit() && bytes.get(end) != '\n') {
+                end += 1;
+            }
+            if (end > start) {
+                refs.put(nameAt(bytes, start, end),
+                        textAt(bytes, start, start + Utils.UID_LENGTH));
+            }
+            start = end + 1;
+        }
+        return refs;
+    }
+
+    /**
+     * Write REFS, commit ids by branch name, as the new content of the
+     * packed-refs file through its taken lock LOCK.
+     * @param lock the lock of the packed-refs file
+     * @param refs the packed branches
+     */
+    static void write(LockFile lock, Map<String, String> refs) {
+        lock.write(format(refs));
+    }
+
+    /**
+     * Return the content of a packed-refs file holding REFS, commit ids
+     * by branch name.
+     * @param refs the packed branches
+     */
+    static byte[] format(Map<String, String> refs) {
+        StringBuilder text = new StringBuilder(HEADER);
+        new TreeMap<>(refs).forEach((name, sha1) ->
+                text.append(sha1).append(' ').append(name).append('\n'));
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the packed-refs file mapped into memory, or null if there
+     * is none.
+     */
+    private MappedByteBuffer map() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Return the branch name of the line of BYTES from START to END.
+     */
+    private static String nameAt(ByteBuffer bytes, int start, int end) {
+        return textAt(bytes, start + Utils.UID_LENGTH + 1, end);
+    }
+
+    /**
+     * Return the bytes of BYTES from START to END as text.
+     */
+    private static String textAt(ByteBuffer bytes, int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+}
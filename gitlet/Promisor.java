@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A Promisor is the repository a blob-less clone was made from, which
+ * promises to provide the blobs the clone did not copy. Missing blobs
+ * are fetched from it when they are first needed, as one pack for all
+ * the blobs an operation is about to read.
+ *
+ * @author Chloe Lin
+ */
+public class Promisor {
+
+    /**
+     * Record the repository whose .gitlet directory is at PATH as the
+     * promisor of the repository at GITLETDIR.
+     * @param gitletDir the .gitlet directory of the repository
+     * @param path the path of the .gitlet directory of the promisor
+     */
+    static void write(File gitletDir, String path) {
+        Utils.writeContents(Utils.join(gitletDir, Main.PROMISOR.getName()), path);
+    }
+
+    /**
+     * Fetch the blobs of BLOBIDS that are not in the object store from
+     * the promisor, in one batch. Does nothing if the repository has no
+     * promisor.
+     * @param blobIds the SHA1s of the blobs about to be read
+     */
+    public static void prefetch(Collection<String> blobIds) {
+        if (!Main.PROMISOR.isFile()) {
+            return;
+        }
+        Set<String> missing = new LinkedHashSet<>();
+        for (String blobSHA1 : blobIds) {
+            if (blobSHA1 != null && !Blob.exists(blobSHA1)) {
+                missing.add(blobSHA1);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        ObjectStore source = new ObjectStore(
+                new File(Utils.readContentsAsString(Main.PROMISOR)));
+        missing.removeIf(blobSHA1 -> !source.hasBlob(blobSHA1));
+        Remote.send(source, ObjectStore.local(), Set.of(), missing);
+    }
+}
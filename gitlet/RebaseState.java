@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A RebaseState records a rebase that stopped on a conflict, so that it
+ * can be continued or aborted later. It is saved in the .gitlet
+ * directory only while the rebase is in progress.
+ *
+ * @author Chloe Lin
+ */
+public class RebaseState implements Serializable {
+
+    /**
+     * The name of the branch being rebased.
+     */
+    private final String branchName;
+    /**
+     * The SHA1 of the head of the branch before the rebase.
+     */
+    private final String originalHead;
+    /**
+     * The SHA1 of the last commit written by the rebase, on which the
+     * next commit is replayed.
+     */
+    private String onto;
+    /**
+     * The SHA1 of the commit HEAD points at while the rebase is stopped.
+     */
+    private String head;
+    /**
+     * The SHA1s of the commits still to replay, in order. The first one
+     * is the commit that stopped on a conflict.
+     */
+    private final List<String> todo;
+    /**
+     * The snapshot the working directory currently holds.
+     */
+    private Map<String, String> workingSnapshot;
+    /**
+     * The files in conflict when the rebase stopped.
+     */
+    private List<String> conflicts = new ArrayList<>();
+
+    /**
+     * Start a rebase of BRANCHNAME from ORIGINALHEAD, replaying TODO on
+     * top of ONTO.
+     * @param branchName the name of the branch being rebased
+     * @param originalHead the commit of the branch before the rebase
+     * @param onto the commit the first commit is replayed on
+     * @param todo the commits to replay, oldest first
+     */
+    public RebaseState(String branchName, Commit originalHead, String onto,
+                       List<String> todo) {
+        this.branchName = branchName;
+        this.originalHead = originalHead.getSHA();
+        this.head = originalHead.getSHA();
+        this.onto = onto;
+        this.todo = new ArrayList<>(todo);
+        this.workingSnapshot = new TreeMap<>(originalHead.getSnapshot());
+    }
+
+    public String getBranchName() {
+        return branchName;
+    }
+
+    public String getOriginalHead() {
+        return originalHead;
+    }
+
+    public String getOnto() {
+        return onto;
+    }
+
+    public String getHead() {
+        return head;
+    }
+
+    public void setHead(String head) {
+        this.head = head;
+    }
+
+    public Map<String, String> getWorkingSnapshot() {
+        return workingSnapshot;
+    }
+
+    public void setWorkingSnapshot(Map<String, String> workingSnapshot) {
+        this.workingSnapshot = new TreeMap<>(workingSnapshot);
+    }
+
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+
+    public void setConflicts(List<String> conflicts) {
+        this.conflicts = new ArrayList<>(conflicts);
+    }
+
+    /**
+     * Return true if there are commits left to replay.
+     */
+    public boolean hasNext() {
+        return !todo.isEmpty();
+    }
+
+    /**
+     * Return the SHA1 of the next commit to replay.
+     */
+    public String next() {
+        return todo.get(0);
+    }
+
+    /**
+     * Mark the next commit as replayed, as ONTO.
+     * @param newOnto the commit the next commit is replayed on
+     */
+    public void advance(String newOnto) {
+        todo.remove(0);
+        this.onto = newOnto;
+    }
+
+    /**
+     * Save the state in the .gitlet directory.
+     */
+    public void save() {
+        Utils.writeObject(Main.REBASE_STATE, this);
+    }
+
+    /**
+     * Return the saved state, or null if no rebase is in progress.
+     */
+    public static RebaseState load() {
+        if (!Main.REBASE_STATE.exists()) {
+            return null;
+        }
+        return Utils.readObject(Main.REBASE_STATE, RebaseState.class);
+    }
+
+    /**
+     * Delete the saved state.
+     */
+    public static void clear() {
+        Main.REBASE_STATE.delete();
+    }
+}
@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A RefTransaction updates HEAD and any number of branches of a
+ * repository as one step. Committing takes the lock files of all the
+ * references in order of path, checks that each branch still points at
+ * the commit the caller expects, and writes the new content of every
+ * reference into one journal file flushed to disk. The lock files are
+ * then written and flushed, renamed into place, and the directories of
+ * the references flushed, and only then is the journal emptied and
+ * flushed, so an empty journal on disk means every reference is. A
+ * process that dies after writing the journal leaves it behind, and
+ * the next command replays it, so either all updates of a
+ * transaction happen or none does. The journal is held with an
+ * operating-system lock while in use, which tells a live transaction
+ * from the journal of a dead one. Each reference moved gets an entry in
+ * its reflog, and a deleted branch loses its reflog.
+ *
+ * @author Chloe Lin
+ */
+public class RefTransaction {
+
+    /**
+     * The name of the journal file in the .gitlet directory.
+     */
+    static final String JOURNAL = "ref-journal";
+
+    /**
+     * The repository whose references are updated.
+     */
+    private final ObjectStore store;
+    /**
+     * The new content of each reference file, or null to delete it, in
+     * order of path.
+     */
+    private final TreeMap<File, byte[]> updates = new TreeMap<>();
+    /**
+     * The branch name of each branch file updated.
+     */
+    private final Map<File, String> branchNames = new HashMap<>();
+    /**
+     * The SHA1 of the commit each branch or HEAD file is expected at.
+     */
+    private final Map<File, String> expected = new HashMap<>();
+    /**
+     * The SHA1 of the commit each reference file is moved to.
+     */
+    private final Map<File, String> targets = new HashMap<>();
+    /**
+     * Why the references are updated, for their reflogs.
+     */
+    private final String reason;
+
+    /**
+     * A transaction on the references of STORE for REASON.
+     * @param store the repository
+     * @param reason why the references are updated, for their reflogs
+     */
+    public RefTransaction(ObjectStore store, String reason) {
+        this.store = store;
+        this.reason = reason;
+    }
+
+    /**
+     * Point the branch BRANCHNAME at COMMIT, if it still points at the
+     * commit OLDSHA1.
+     * @param branchName the name of a branch
+     * @param oldSHA1 the SHA1 of the commit the branch is expected at,
+     *                or null to move it whatever it points at
+     * @param commit the new head of the branch
+     */
+    public RefTransaction update(String branchName, String oldSHA1, Commit commit) {
+        put(branchName, oldSHA1, Utils.serialize(new Branch(branchName, commit)));
+        targets.put(store.branchFile(branchName).getAbsoluteFile(), commit.getSHA());
+        return this;
+    }
+
+    /**
+     * Delete the branch BRANCHNAME, loose and packed, if it still points
+     * at the commit OLDSHA1.
+     * @param branchName the name of a branch
+     * @param oldSHA1 the SHA1 of the commit the branch is expected at,
+     *                or null to delete it whatever it points at
+     */
+    public RefTransaction delete(String branchName, String oldSHA1) {
+        return put(branchName, oldSHA1, null);
+    }
+
+    /**
+     * Point the HEAD file HEAD of a working tree at the branch
+     * BRANCHNAME at COMMIT.
+     * @param head the HEAD file of a working tree
+     * @param branchName the name of the branch checked out
+     * @param commit the head commit of the branch
+     */
+    public RefTransaction updateHead(File head, String branchName, Commit commit) {
+        updates.put(head.getAbsoluteFile(), Utils.serialize(new Branch(branchName, commit)));
+        targets.put(head.getAbsoluteFile(), commit.getSHA());
+        return this;
+    }
+
+    /**
+     * Point the HEAD file HEAD at the branch BRANCHNAME at COMMIT, if it
+     * still points at the commit OLDSHA1.
+     * @param head the HEAD file of a working tree
+     * @param oldSHA1 the SHA1 of the commit HEAD is expected at, or null
+     *                to move it whatever it points at
+     * @param branchName the name of the branch checked out
+     * @param commit the head commit of the branch
+     */
+    public RefTransaction updateHead(File head, String oldSHA1, String branchName,
+                                     Commit commit) {
+        if (oldSHA1 != null) {
+            expected.put(head.getAbsoluteFile(), oldSHA1);
+        }
+        return updateHead(head, branchName, commit);
+    }
+
+    /**
+     * Add the update of the branch file of BRANCHNAME to CONTENT.
+     */
+    private RefTransaction put(String branchName, String oldSHA1, byte[] content) {
+        File file = store.branchFile(branchName).getAbsoluteFile();
+        updates.put(file, content);
+        targets.remove(file);
+        branchNames.put(file, branchName);
+        if (oldSHA1 != null) {
+            expected.put(file, oldSHA1);
+        }
+        return this;
+    }
+
+    /**
+     * Apply all updates, or none if a branch no longer points at the
+     * commit it is expected at. Return true if they were applied.
+     */
+    public boolean commit() {
+        Map<File, LockFile> locks = new LinkedHashMap<>();
+        try {
+            for (File file : updates.keySet()) {
+                lock(locks, file);
+            }
+            for (Map.Entry<File, String> entry : expected.entrySet()) {
+                String name = branchNames.get(entry.getKey());
+                String current = name != null ? store.branchSHA1(name)
+                        : Reflog.headSHA1(entry.getKey());
+                if (!entry.getValue().equals(current)) {
+                    return false;
+                }
+            }
+
+            Map<File, byte[]> writes = new LinkedHashMap<>();
+            PackedRefs packed = store.packedRefs();
+            Set<String> unpacked = new TreeSet<>();
+            updates.forEach((file, content) -> {
+                if (content == null && branchNames.containsKey(file)
+                        && packed.find(branchNames.get(file)) != null) {
+                    unpacked.add(branchNames.get(file));
+                }
+            });
+            if (!unpacked.isEmpty()) {
+                File packedFile = packed.getFile().getAbsoluteFile();
+                lock(locks, packedFile);
+                TreeMap<String, String> refs = packed.readAll();
+                refs.keySet().removeAll(unpacked);
+                writes.put(packedFile, PackedRefs.format(refs));
+            }
+            writes.putAll(updates);
+            log();
+            apply(locks, writes);
+            branchNames.forEach((file, name) -> {
+                if (updates.get(file) == null) {
+                    store.branchLog(name).delete();
+                }
+            });
+            return true;
+        } finally {
+            locks.values().forEach(LockFile::rollback);
+        }
+    }
+
+    /**
+     * Take the lock of FILE into LOCKS, or release all of LOCKS and exit
+     * if another process holds it.
+     */
+    private static void lock(Map<File, LockFile> locks, File file) {
+        LockFile lock = LockFile.tryAcquire(file);
+        if (lock == null) {
+            locks.values().forEach(LockFile::rollback);
+            Main.exitWithError("Another gitlet process holds " + file + ".lock.");
+        }
+        locks.put(file, lock);
+    }
+
+    /**
+     * Append the updates of the locked references to their reflogs.
+     */
+    private void log() {
+        targets.forEach((file, newSHA1) -> {
+            String name = branchNames.get(file);
+            if (name != null) {
+                Reflog.append(store.branchLog(name), store.branchSHA1(name), newSHA1, reason);
+            } else {
+                Reflog.append(Reflog.headLog(file), Reflog.headSHA1(file), newSHA1, reason);
+            }
+        });
+    }
+
+    /**
+     * Record WRITES in the journal, then make them through their taken
+     * LOCKS and empty the journal.
+     */
+    private void apply(Map<File, LockFile> locks, Map<File, byte[]> writes) {
+        File journal = Utils.join(store.getDir(), JOURNAL);
+        try (FileChannel channel = FileChannel.open(journal.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            FileLock held = channel.lock();
+            try {
+                LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>();
+                writes.forEach((file, content) -> entries.put(file.getPath(), content));
+                ByteBuffer buffer = ByteBuffer.wrap(Utils.serialize(entries));
+                channel.truncate(0);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+
+                Set<Path> dirs = new TreeSet<>();
+                writes.forEach((file, content) -> {
+                    if (content == null) {
+                        file.delete();
+                    } else {
+                        LockFile lock = locks.get(file);
+                        lock.write(content);
+                        lock.commit(false);
+                    }
+                    dirs.add(file.toPath().getParent());
+                });
+                dirs.forEach(LockFile::syncDirectory);
+                channel.truncate(0);
+                channel.force(true);
+            } finally {
+                held.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finish the transaction whose process died after writing the
+     * journal of the repository at GITLETDIR, if there is one. A
+     * journal still in use by a live process is left alone, and one
+     * whose writing did not finish is dropped, since no reference was
+     * changed before it was written.
+     * @param gitletDir the .gitlet directory of a repository
+     */
+    public static void recover(File gitletDir) {
+        File journal = Utils.join(gitletDir, JOURNAL);
+        if (journal.length() == 0) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(journal.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock held = channel.tryLock();
+            if (held == null) {
+                return;
+            }
+            try {
+                replay(channel, journal.toPath());
+            } finally {
+                held.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Make the writes recorded in the journal JOURNAL, locked through
+     * CHANNEL, if any, and empty it, in the same order as a transaction
+     * does: each reference is flushed, renamed into place and its
+     * directory flushed before the journal is emptied.
+     */
+    @SuppressWarnings("unchecked")
+    private static void replay(FileChannel channel, Path journal) throws IOException {
+        byte[] bytes = Files.readAllBytes(journal);
+        if (bytes.length == 0) {
+            return;
+        }
+        Map<String, byte[]> entries;
+        try {
+            entries = Utils.deserialize(bytes, LinkedHashMap.class);
+        } catch (IllegalArgumentException e) {
+            entries = Map.of();
+        }
+        Set<Path> dirs = new TreeSet<>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            Path file = Path.of(entry.getKey());
+            Path lock = file.resolveSibling(file.getFileName() + ".lock");
+            if (entry.getValue() == null) {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(lock);
+            } else {
+                try (FileChannel out = FileChannel.open(lock, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(entry.getValue());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    out.force(true);
+                }
+                Files.move(lock, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirs.add(file.getParent());
+        }
+        dirs.forEach(LockFile::syncDirectory);
+        channel.truncate(0);
+        channel.force(true);
+    }
+}
@@ -0,0 +1,222 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+
+/**
+ * A Reflog records where a reference pointed over time. Each update of
+ * HEAD or a branch appends one line to its log under .gitlet/logs:
+ * "[old commit id] [new commit id] [milliseconds since the epoch]",
+ * a tab and the reason for the update. A line is written with a single
+ * append, so writing costs the same however long the log is, and logs
+ * are read from the end, a block at a time, so reading the latest
+ * entries does not read the whole log.
+ *
+ * @author Chloe Lin
+ */
+public class Reflog {
+
+    /**
+     * The number of bytes read from a log at a time.
+     */
+    static final int BLOCK_SIZE = 8192;
+    /**
+     * The age in days of the entries dropped by expire by default.
+     */
+    static final int DEFAULT_EXPIRE_DAYS = 90;
+
+    /**
+     * One line of a log.
+     */
+    public static class Entry {
+        /** The commit the reference pointed at before. */
+        private final String oldSHA1;
+        /** The commit the reference pointed at after. */
+        private final String newSHA1;
+        /** When the reference was updated, in milliseconds. */
+        private final long time;
+        /** Why the reference was updated. */
+        private final String reason;
+
+        Entry(String oldSHA1, String newSHA1, long time, String reason) {
+            this.oldSHA1 = oldSHA1;
+            this.newSHA1 = newSHA1;
+            this.time = time;
+            this.reason = reason;
+        }
+
+        /**
+         * Return the entry of the log line LINE, or null if it is not one.
+         * @param line a line of a log
+         */
+        static Entry parse(String line) {
+            int tab = line.indexOf('\t');
+            String[] fields = (tab < 0 ? line : line.substring(0, tab)).split(" ");
+            if (fields.length != 3) {
+                return null;
+            }
+            try {
+                return new Entry(fields[0], fields[1], Long.parseLong(fields[2]),
+                        tab < 0 ? "" : line.substring(tab + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public String getOldSHA1() {
+            return oldSHA1;
+        }
+
+        public String getNewSHA1() {
+            return newSHA1;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    /**
+     * Return the log of the HEAD file HEAD.
+     * @param head the HEAD file of a working tree
+     */
+    static File headLog(File head) {
+        return Utils.join(head.getAbsoluteFile().getParentFile(), "logs", "HEAD");
+    }
+
+    /**
+     * Return the SHA1 of the commit the HEAD file HEAD points at, or
+     * null if it points at none yet.
+     * @param head the HEAD file of a working tree
+     */
+    static String headSHA1(File head) {
+        return head.length() > 0 ? Branch.load(head).getHeadSHA() : null;
+    }
+
+    /**
+     * Append an entry for the update of a reference from the commit
+     * OLDSHA1 to NEWSHA1 to the log LOG.
+     * @param log the log of the reference
+     * @param oldSHA1 the commit it pointed at, or null if it is new
+     * @param newSHA1 the commit it points at
+     * @param reason why it was updated
+     */
+    static void append(File log, String oldSHA1, String newSHA1, String reason) {
+        String line = (oldSHA1 == null ? Repo.INIT_PARENT_SHA1 : oldSHA1) + " " + newSHA1
+                + " " + System.currentTimeMillis() + "\t"
+                + reason.replace('\n', ' ').trim() + "\n";
+        try {
+            log.getParentFile().mkdirs();
+            Files.write(log.toPath(), line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Give the entries of the log LOG to ACTION, newest first, until it
+     * returns false. At most BLOCK_SIZE bytes and one line are held at
+     * a time, besides the entries ACTION keeps.
+     * @param log the log of a reference
+     * @param action what to do with each entry
+     */
+    static void readBackwards(File log, Predicate<Entry> action) {
+        if (!log.isFile()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+            byte[] block = new byte[BLOCK_SIZE];
+            byte[] line = new byte[0];
+            long pos = file.length();
+            while (pos > 0) {
+                int n = (int) Math.min(BLOCK_SIZE, pos);
+                pos -= n;
+                file.seek(pos);
+                file.readFully(block, 0, n);
+                int end = n;
+                for (int i = n - 1; i >= 0; i--) {
+                    if (block[i] == '\n') {
+                        line = prepend(block, i + 1, end, line);
+                        if (!give(line, action)) {
+                            return;
+                        }
+                        line = new byte[0];
+                        end = i;
+                    }
+                }
+                line = prepend(block, 0, end, line);
+            }
+            give(line, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Return the bytes of BLOCK from START to END followed by REST.
+     */
+    private static byte[] prepend(byte[] block, int start, int end, byte[] rest) {
+        byte[] joined = new byte[end - start + rest.length];
+        System.arraycopy(block, start, joined, 0, end - start);
+        System.arraycopy(rest, 0, joined, end - start, rest.length);
+        return joined;
+    }
+
+    /**
+     * Give the entry of the log line LINE, if it is one, to ACTION, and
+     * return whether to go on.
+     */
+    private static boolean give(byte[] line, Predicate<Entry> action) {
+        Entry entry = Entry.parse(new String(line, StandardCharsets.UTF_8));
+        return entry == null || action.test(entry);
+    }
+
+    /**
+     * Drop the entries of the log LOG of the reference file REF older
+     * than CUTOFF, in milliseconds since the epoch, and return how many
+     * were dropped. The log is rewritten while the lock of REF is held,
+     * as it is by every update that appends to the log, so no entry
+     * appended meanwhile is lost.
+     * @param log the log of a reference
+     * @param ref the file of the reference
+     * @param cutoff the time of the oldest entry to keep
+     */
+    static int expire(File log, File ref, long cutoff) {
+        if (!log.isFile()) {
+            return 0;
+        }
+        LockFile refLock = LockFile.acquire(ref);
+        LockFile lock = LockFile.acquire(log);
+        try {
+            StringBuilder kept = new StringBuilder();
+            int dropped = 0;
+            for (String line : Utils.readContentsAsString(log).split("\n")) {
+                Entry entry = Entry.parse(line);
+                if (entry != null && entry.getTime() < cutoff) {
+                    dropped += 1;
+                } else if (!line.isEmpty()) {
+                    kept.append(line).append('\n');
+                }
+            }
+            if (dropped > 0) {
+                lock.write(kept.toString().getBytes(StandardCharsets.UTF_8));
+                lock.commit();
+            }
+            return dropped;
+        } finally {
+            lock.rollback();
+            refLock.rollback();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A Remote is another Gitlet repository on a local path, known by a
+ * name. Fetching and pushing send the objects one side is missing from
+ * the other as one pack stream, written by one thread and read by
+ * another, instead of copying object files one by one. A remote can
+ * also be the URL of an ObjectServer, which can only be fetched from.
+ *
+ * @author Chloe Lin
+ */
+public class Remote {
+
+    /**
+     * The name of the remote.
+     */
+    private final String name;
+    /**
+     * The URL of the remote if it is served over HTTP, or null.
+     */
+    private final String url;
+    /**
+     * The repository of the remote if it is on a local path, or null.
+     */
+    private final ObjectStore store;
+
+    /**
+     * A remote called NAME whose .gitlet directory is at PATH.
+     * @param name the name of the remote
+     * @param path the path of its .gitlet directory
+     */
+    Remote(String name, String path) {
+        this.name = name;
+        if (path.startsWith("http://")) {
+            this.url = path.replaceAll("/+$", "");
+            this.store = null;
+        } else {
+            this.url = null;
+            this.store = new ObjectStore(new File(path.replace("/", File.separator)));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ObjectStore getStore() {
+        return store;
+    }
+
+    /**
+     * Return true if the remote is served over HTTP.
+     */
+    public boolean isHttp() {
+        return url != null;
+    }
+
+    /**
+     * Return true if the repository of the remote can be reached.
+     */
+    public boolean exists() {
+        if (!isHttp()) {
+            return store.exists();
+        }
+        try {
+            fetchRefs();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return true if the remote has the branch BRANCHNAME.
+     * @param branchName the name of a branch of the remote
+     */
+    public boolean hasBranch(String branchName) {
+        if (!isHttp()) {
+            return store.hasBranch(branchName);
+        }
+        try {
+            return fetchRefs().containsKey(branchName);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return the remote called NAME, or null if there is none.
+     * @param name the name of a remote
+     */
+    public static Remote load(String name) {
+        String path = loadAll(Main.REMOTES).get(name);
+        return path == null ? null : new Remote(name, path);
+    }
+
+    /**
+     * Remember the repository whose .gitlet directory is at PATH as the
+     * remote NAME.
+     * @param name the name of the remote
+     * @param path the path of its .gitlet directory
+     */
+    public static void add(String name, String path) {
+        add(Main.GITLET_FOLDER, name, path);
+    }
+
+    /**
+     * Remember the repository whose .gitlet directory is at PATH as the
+     * remote NAME of the repository at GITLETDIR.
+     * @param gitletDir the .gitlet directory of the repository
+     * @param name the name of the remote
+     * @param path the path of its .gitlet directory
+     */
+    static void add(File gitletDir, String name, String path) {
+        File file = Utils.join(gitletDir, Main.REMOTES.getName());
+        TreeMap<String, String> remotes = loadAll(file);
+        remotes.put(name, path);
+        Utils.writeObject(file, remotes);
+    }
+
+    /**
+     * Forget the remote NAME.
+     * @param name the name of the remote
+     */
+    public static void remove(String name) {
+        TreeMap<String, String> remotes = loadAll(Main.REMOTES);
+        remotes.remove(name);
+        Utils.writeObject(Main.REMOTES, remotes);
+    }
+
+    /**
+     * Return the paths of the remotes saved in FILE by name.
+     */
+    @SuppressWarnings("unchecked")
+    private static TreeMap<String, String> loadAll(File file) {
+        if (!file.exists()) {
+            return new TreeMap<>();
+        }
+        return Utils.readObject(file, TreeMap.class);
+    }
+
+    /**
+     * Copy the commits and blobs of the branch BRANCHNAME of the remote
+     * that the current repository is missing, and point the branch
+     * NAME/BRANCHNAME at its head. Return the number of objects copied.
+     * @param branchName the name of a branch of the remote
+     */
+    public int fetch(String branchName) {
+        ObjectStore local = ObjectStore.local();
+        if (isHttp()) {
+            return fetchOverHttp(local, branchName);
+        }
+        Commit head = store.branchHead(branchName);
+        int count = transfer(store, local, head.getSHA());
+        local.setBranchHead(name + "/" + branchName, local.loadCommit(head.getSHA()),
+                "fetch: from " + name);
+        return count;
+    }
+
+    /**
+     * Copy the commits and blobs of COMMIT that the remote is missing,
+     * and point its branch BRANCHNAME at it if the branch still points
+     * at the commit OLDSHA1. Return true if the branch was moved.
+     * @param branchName the name of a branch of the remote
+     * @param oldSHA1 the SHA1 of the commit the branch is expected at,
+     *                or null if it is new
+     * @param commit the commit to push
+     */
+    public boolean push(String branchName, String oldSHA1, Commit commit) {
+        transfer(ObjectStore.local(), store, commit.getSHA());
+        return store.compareAndSetBranchHead(branchName, oldSHA1, commit,
+                "push: from " + Main.GITLET_FOLDER.getAbsoluteFile().getParent());
+    }
+
+    /**
+     * Fetch the branch BRANCHNAME from an ObjectServer: ask for its head
+     * commit, telling the server the head commits of all local branches,
+     * and read the pack it answers with into LOCAL.
+     */
+    private int fetchOverHttp(ObjectStore local, String branchName) {
+        try {
+            String want = fetchRefs().get(branchName);
+            int count = 0;
+            if (!local.hasCommit(want)) {
+                StringBuilder request = new StringBuilder("want " + want + "\n");
+                for (String name : local.branchNames()) {
+                    request.append("have ").append(local.branchHead(name).getSHA()).append('\n');
+                }
+                HttpResponse<InputStream> response = HttpClient.newHttpClient().send(
+                        HttpRequest.newBuilder(URI.create(url + "/fetch"))
+                                .POST(HttpRequest.BodyPublishers.ofString(request.toString()))
+                                .build(),
+                        HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream in = response.body()) {
+                    if (response.statusCode() != 200) {
+                        throw new IOException("fetch failed: " + response.statusCode());
+                    }
+                    count = Pack.read(in, local);
+                }
+            }
+            local.setBranchHead(name + "/" + branchName, local.loadCommit(want),
+                "fetch: from " + name);
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Return the head commits of the branches of an ObjectServer, by
+     * branch name.
+     */
+    private Map<String, String> fetchRefs() throws IOException {
+        HttpResponse<String> response;
+        try {
+            response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create(url + "/refs")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException | IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("no refs: " + response.statusCode());
+        }
+        Map<String, String> refs = new TreeMap<>();
+        for (String line : response.body().split("\n")) {
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                refs.put(line.substring(space + 1), line.substring(0, space));
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Send the objects reachable from WANT that TARGET does not have
+     * from SOURCE to TARGET as one pack, and return their number.
+     */
+    private static int transfer(ObjectStore source, ObjectStore target, String want) {
+        List<String> commits = Pack.missingCommits(source, want, target::hasCommit);
+        if (commits.isEmpty()) {
+            return 0;
+        }
+        return send(source, target, commits, Pack.missingBlobs(source, commits, target::hasBlob));
+    }
+
+    /**
+     * Send COMMITS and BLOBS from SOURCE to TARGET as one pack, with the
+     * chunks TARGET does not have, and return the number of objects.
+     * @param source the repository the objects are read from
+     * @param target the repository the objects are stored in
+     * @param commits the SHA1s of the commits, parents first
+     * @param blobs the SHA1s of the blobs
+     */
+    static int send(ObjectStore source, ObjectStore target, Collection<String> commits,
+                    Collection<String> blobs) {
+        try (PipedInputStream in = new PipedInputStream(Utils.BUFFER_SIZE)) {
+            PipedOutputStream out = new PipedOutputStream(in);
+            FutureTask<Void> writer = new FutureTask<>(() -> {
+                try (PipedOutputStream pack = out) {
+                    Pack.write(source, commits, blobs, target::hasChunk, pack);
+                }
+                return null;
+            });
+            new Thread(writer, "pack-writer").start();
+            int count = Pack.read(in, target);
+            writer.get();
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
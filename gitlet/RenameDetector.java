@@ -0,0 +1,363 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/**
+ * A RenameDetector pairs the files deleted between two snapshots with
+ * the files added, so that a moved file is seen as a rename instead of
+ * a deletion and an addition. Files with the same blob are paired
+ * first. For the others, each blob is read once as a stream and reduced
+ * to a MinHash signature over the hashes of its lines, which estimates
+ * how many lines two files share. Candidate pairs are found with
+ * locality-sensitive hashing on bands of the signatures, so only files
+ * that are likely to be similar are ever compared.
+ *
+ * @author Chloe Lin
+ */
+public class RenameDetector {
+
+    /**
+     * Minimum similarity, in percent, for two files to be paired.
+     */
+    static final int DEFAULT_THRESHOLD = 50;
+    /**
+     * Number of hash functions in a signature.
+     */
+    static final int SIGNATURE_SIZE = 64;
+    /**
+     * Number of signature values hashed together into one band.
+     */
+    static final int ROWS_PER_BAND = 4;
+    /**
+     * Start value of the FNV-1a hash of a line.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /**
+     * Multiplier of the FNV-1a hash of a line.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /**
+     * Seeds of the hash functions of a signature.
+     */
+    private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x72656e616d6573L);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * A possible pairing of a source file with an added file.
+     */
+    private static class Candidate {
+        /** Index of the source file. */
+        private final int source;
+        /** Index of the added file. */
+        private final int target;
+        /** Estimated similarity in percent. */
+        private final int score;
+
+        Candidate(int source, int target, int score) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Return CHANGES with the deleted and added files that are similar
+     * enough paired into renames (R). If FINDCOPIES is true, added files
+     * can also be paired with modified files as copies (C). The result
+     * is sorted by file name.
+     * @param changes the changes between two snapshots, from TreeDiff
+     * @param findCopies whether to look for copies of modified files
+     * @param threshold minimum similarity in percent
+     */
+    public static List<TreeDiff.Change> detect(List<TreeDiff.Change> changes,
+                                               boolean findCopies, int threshold) {
+        List<TreeDiff.Change> sources = new ArrayList<>();
+        List<TreeDiff.Change> targets = new ArrayList<>();
+        List<TreeDiff.Change> result = new ArrayList<>();
+        for (TreeDiff.Change change : changes) {
+            if (change.getStatus() == 'D') {
+                sources.add(change);
+            } else if (change.getStatus() == 'A') {
+                targets.add(change);
+            } else {
+                result.add(change);
+                if (findCopies && change.getStatus() == 'M') {
+                    sources.add(change);
+                }
+            }
+        }
+        if (sources.isEmpty() || targets.isEmpty()) {
+            return changes;
+        }
+
+        BitSet renamed = new BitSet(sources.size());
+        BitSet paired = new BitSet(targets.size());
+        pairExact(sources, targets, findCopies, renamed, paired, result);
+
+        List<String> blobIds = new ArrayList<>();
+        for (int s = 0; s < sources.size(); s++) {
+            if (findCopies || !renamed.get(s)) {
+                blobIds.add(sources.get(s).getOldId());
+            }
+        }
+        for (int t = 0; t < targets.size(); t++) {
+            if (!paired.get(t)) {
+                blobIds.add(targets.get(t).getNewId());
+            }
+        }
+        Promisor.prefetch(blobIds);
+
+        long[][] sourceSignatures = new long[sources.size()][];
+        Arrays.parallelSetAll(sourceSignatures, s -> !findCopies && renamed.get(s) ? null
+                : signature(sources.get(s).getOldPath(), sources.get(s).getOldId()));
+        long[][] targetSignatures = new long[targets.size()][];
+        Arrays.parallelSetAll(targetSignatures, t -> paired.get(t) ? null
+                : signature(targets.get(t).getPath(), targets.get(t).getNewId()));
+
+        List<Candidate> candidates = findCandidates(sourceSignatures, targetSignatures,
+                threshold);
+        candidates.sort(Comparator.comparingInt((Candidate c) -> -c.score)
+                .thenComparing(c -> targets.get(c.target).getPath())
+                .thenComparing(c -> sources.get(c.source).getOldPath()));
+        for (Candidate candidate : candidates) {
+            if (paired.get(candidate.target)) {
+                continue;
+            }
+            TreeDiff.Change source = sources.get(candidate.source);
+            TreeDiff.Change target = targets.get(candidate.target);
+            if (source.getStatus() == 'D' && !renamed.get(candidate.source)) {
+                renamed.set(candidate.source);
+            } else if (!findCopies) {
+                continue;
+            }
+            paired.set(candidate.target);
+            result.add(pair(source, target, candidate.score));
+        }
+
+        for (int s = 0; s < sources.size(); s++) {
+            if (sources.get(s).getStatus() == 'D' && !renamed.get(s)) {
+                result.add(sources.get(s));
+            }
+        }
+        for (int t = 0; t < targets.size(); t++) {
+            if (!paired.get(t)) {
+                result.add(targets.get(t));
+            }
+        }
+        result.sort(Comparator.comparing(TreeDiff.Change::getPath)
+                .thenComparing(TreeDiff.Change::getOldPath));
+        return result;
+    }
+
+    /**
+     * Return the files renamed from OLDSNAPSHOT to NEWSNAPSHOT, as a
+     * mapping from the old file name to the new one.
+     * @param oldSnapshot the old file-blob mapping
+     * @param newSnapshot the new file-blob mapping
+     */
+    public static Map<String, String> renames(Map<String, String> oldSnapshot,
+                                              Map<String, String> newSnapshot) {
+        Map<String, String> renames = new TreeMap<>();
+        for (TreeDiff.Change change : detect(TreeDiff.compare(oldSnapshot, newSnapshot),
+                false, DEFAULT_THRESHOLD)) {
+            if (change.getStatus() == 'R') {
+                renames.put(change.getOldPath(), change.getPath());
+            }
+        }
+        return renames;
+    }
+
+    /**
+     * Pair the added files with sources that have exactly the same blob,
+     * preferring deleted sources, which become renames.
+     */
+    private static void pairExact(List<TreeDiff.Change> sources,
+                                  List<TreeDiff.Change> targets, boolean findCopies,
+                                  BitSet renamed, BitSet paired,
+                                  List<TreeDiff.Change> result) {
+        Map<String, Deque<Integer>> deletedById = new HashMap<>();
+        Map<String, Integer> anyById = new HashMap<>();
+        for (int s = 0; s < sources.size(); s++) {
+            TreeDiff.Change source = sources.get(s);
+            if (source.getStatus() == 'D') {
+                deletedById.computeIfAbsent(source.getOldId(), id -> new ArrayDeque<>())
+                        .add(s);
+            }
+            anyById.putIfAbsent(source.getOldId(), s);
+        }
+        for (int t = 0; t < targets.size(); t++) {
+            String id = targets.get(t).getNewId();
+            Deque<Integer> deleted = deletedById.get(id);
+            if (deleted != null && !deleted.isEmpty()) {
+                int s = deleted.poll();
+                renamed.set(s);
+                paired.set(t);
+                result.add(pair(sources.get(s), targets.get(t), 100));
+            } else if (findCopies && anyById.containsKey(id)) {
+                paired.set(t);
+                result.add(pair(sources.get(anyById.get(id)), targets.get(t), 100));
+            }
+        }
+    }
+
+    /**
+     * Return the rename or copy of SOURCE into TARGET.
+     */
+    private static TreeDiff.Change pair(TreeDiff.Change source, TreeDiff.Change target,
+                                        int score) {
+        char status = source.getStatus() == 'D' ? 'R' : 'C';
+        return new TreeDiff.Change(status, source.getOldPath(), target.getPath(),
+                source.getOldId(), target.getNewId(), score);
+    }
+
+    /**
+     * Return the pairs of sources and targets whose signatures share at
+     * least one band and whose estimated similarity reaches THRESHOLD.
+     */
+    private static List<Candidate> findCandidates(long[][] sourceSignatures,
+                                                  long[][] targetSignatures,
+                                                  int threshold) {
+        int bands = SIGNATURE_SIZE / ROWS_PER_BAND;
+        List<Map<Long, List<Integer>>> buckets = new ArrayList<>(bands);
+        for (int b = 0; b < bands; b++) {
+            Map<Long, List<Integer>> bucket = new HashMap<>();
+            for (int s = 0; s < sourceSignatures.length; s++) {
+                if (sourceSignatures[s] != null) {
+                    bucket.computeIfAbsent(bandHash(sourceSignatures[s], b),
+                            key -> new ArrayList<>()).add(s);
+                }
+            }
+            buckets.add(bucket);
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        BitSet seen = new BitSet(sourceSignatures.length);
+        for (int t = 0; t < targetSignatures.length; t++) {
+            long[] target = targetSignatures[t];
+            if (target == null) {
+                continue;
+            }
+            seen.clear();
+            for (int b = 0; b < bands; b++) {
+                List<Integer> bucket = buckets.get(b).get(bandHash(target, b));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int s : bucket) {
+                    if (seen.get(s)) {
+                        continue;
+                    }
+                    seen.set(s);
+                    int score = similarity(sourceSignatures[s], target);
+                    if (score >= threshold) {
+                        candidates.add(new Candidate(s, t, score));
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Return the hash of band B of SIGNATURE.
+     */
+    private static long bandHash(long[] signature, int b) {
+        long h = b;
+        for (int i = b * ROWS_PER_BAND; i < (b + 1) * ROWS_PER_BAND; i++) {
+            h = mix(h ^ signature[i]);
+        }
+        return h;
+    }
+
+    /**
+     * Return the estimated similarity of two signatures in percent, the
+     * share of hash functions on which they agree.
+     */
+    private static int similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / SIGNATURE_SIZE;
+    }
+
+    /**
+     * Return the MinHash signature of the lines of a blob, read as a
+     * stream, or null if the blob is empty.
+     * @param fileName the name of the file
+     * @param blobSHA1 the SHA1 of its blob
+     */
+    static long[] signature(String fileName, String blobSHA1) {
+        long[] signature = new long[SIGNATURE_SIZE];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        boolean empty = true;
+        try (InputStream in = Blob.load(fileName, blobSHA1).openStream()) {
+            byte[] buffer = new byte[Utils.BUFFER_SIZE];
+            long line = FNV_OFFSET;
+            boolean inLine = false;
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        addLine(signature, line);
+                        empty = false;
+                        line = FNV_OFFSET;
+                        inLine = false;
+                    } else {
+                        line = (line ^ (buffer[i] & 0xff)) * FNV_PRIME;
+                        inLine = true;
+                    }
+                }
+            }
+            if (inLine) {
+                addLine(signature, line);
+                empty = false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return empty ? null : signature;
+    }
+
+    /**
+     * Update SIGNATURE with the hash of one line.
+     */
+    private static void addLine(long[] signature, long line) {
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            long h = mix(line ^ SEEDS[i]);
+            if (h < signature[i]) {
+                signature[i] = h;
+            }
+        }
+    }
+
+    /**
+     * Return a well-mixed 64-bit hash of X (the SplitMix64 finalizer).
+     */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -2,8 +2,16 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A Repo class represents a gitlet repository.
@@ -14,6 +22,11 @@ public class Repo {
 
     static final String SENTINEL_COMMIT_ID = "6cf73ef132f3f89a94f4c73ec879aa79ba529e86";
     static final String INIT_PARENT_SHA1 = "0000000000000000000000000000000000000000";
+    /** The error when another process moved the current branch first. */
+    static final String BRANCH_MOVED =
+            "The branch was moved by another gitlet process; try again.";
+    static final String REBASE_IN_PROGRESS =
+            "A rebase is in progress; use rebase --continue or rebase --abort.";
     static Staging stagingArea = new Staging();
     Head head = new Head();
     Merge merge = new Merge();
@@ -28,8 +41,7 @@ public class Repo {
                 true, new HashMap<>());
         sentinel.saveInit();
         initialCommit.saveInit();
-        Head.setGlobalHEAD("master", initialCommit);
-        Head.setBranchHEAD("master", initialCommit);
+        Head.advance("master", null, initialCommit, "commit (initial): initial commit");
         stagingArea.save();
     }
 
@@ -52,31 +64,125 @@ public class Repo {
      * be added, and remove it from the staging area if it is
      * already there (as can happen when a file is changed,
      * added, and then changed back).
+     *
+     * Several files or directories can be added at once, and -A adds
+     * every file in the working directory and stages the removal of
+     * tracked files that are gone. The files are stored in parallel,
+     * hashed while they are copied, and staged under the id they were
+     * stored with; only a file as large as its tracked version is hashed
+     * first, so that an unchanged file is not copied. The index is saved
+     * a single time at the end.
+     * @param args user's input of commands and operands
      * */
     public void add(String[] args) throws IOException {
         Main.validateNumArgs(args);
-        String fileName = args[1];
+        boolean addAll = args[1].equals("-A");
+        Map<String, String> tracked = Head.getGlobalHEAD().getSnapshot();
+        List<String> fileNames = addAll
+                ? filesInWorkingTree(".")
+                : filesToBeAdded(Arrays.copyOfRange(args, 1, args.length));
+
+        stagingArea = stagingArea.load();
 
-        if (isSameVersionAsLastCommit(fileName)) {
-            if (stagingArea.containsFileForRemoval(fileName)) {
+        // stage 1: store every file in parallel, streaming its content,
+        // and keep only the files that differ from the current commit.
+        Map<String, String> changed = new TreeMap<>(fileNames.parallelStream()
+                .collect(Collectors.toConcurrentMap(fileName -> fileName,
+                        fileName -> storeWorkingFile(fileName, tracked.get(fileName)))));
+        changed.entrySet().removeIf(entry ->
+                entry.getValue().equals(tracked.get(entry.getKey())));
+
+        // stage 2: update the index once for all files.
+        changed.forEach((fileName, blobSHA1) -> {
+            stagingArea.add(fileName, blobSHA1);
+            stagingArea.removeFromStagedForRemoval(fileName);
+        });
+        for (String fileName : fileNames) {
+            if (!changed.containsKey(fileName)) {
+                stagingArea.remove(fileName);
                 stagingArea.removeFromStagedForRemoval(fileName);
             }
-            stagingArea.save();
-            return;
         }
+        if (addAll) {
+            Set<String> present = new HashSet<>(fileNames);
+            tracked.keySet().forEach(fileName -> {
+                if (!present.contains(fileName)) {
+                    stagingArea.remove(fileName);
+                    stagingArea.unstage(fileName);
+                }
+            });
+        }
+        stagingArea.save();
+    }
 
-        Blob blob = new Blob(fileName);
-        blob.save();
-        stage(fileName, blob);
+    /**
+     * Return the blob id of the working file FILENAME, making sure the
+     * blob is stored. The id is the one the content was stored with, so
+     * a file changed meanwhile never leaves the index pointing at a
+     * missing blob. A file as large as its tracked version TRACKEDSHA1 is
+     * hashed first, and not copied if it is unchanged or already stored.
+     * @param fileName the name of a working file
+     * @param trackedSHA1 the blob of the file in the current commit, or null
+     */
+    private static String storeWorkingFile(String fileName, String trackedSHA1) {
+        File file = Utils.join(".", fileName);
+        try {
+            if (trackedSHA1 != null
+                    && file.length() == new Blob(fileName, trackedSHA1).size()) {
+                String blobSHA1 = Utils.sha1(file);
+                if (blobSHA1.equals(trackedSHA1) || Blob.exists(blobSHA1)) {
+                    return blobSHA1;
+                }
+            }
+            return Blob.store(fileName).getBlobSHA1();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-    * Stage a file in the staging area
-    */
-    private void stage(String fileName, Blob blob) throws IOException {
-        stagingArea = stagingArea.load();
-        stagingArea.add(fileName, blob.getBlobSHA1());
-        stagingArea.save();
+     * Expand the operands of add into working-tree relative file names.
+     * A directory stands for every file below it.
+     * @param paths files or directories given to add
+     */
+    private List<String> filesToBeAdded(String[] paths) throws IOException {
+        Set<String> fileNames = new TreeSet<>();
+        for (String path : paths) {
+            fileNames.addAll(filesInWorkingTree(path));
+        }
+        return new ArrayList<>(fileNames);
+    }
+
+    /**
+     * Return the names of all plain files at or below PATH, relative to
+     * the working directory and separated by "/". The .gitlet directory
+     * is skipped.
+     * @param path a file or directory inside the working directory
+     */
+    public static List<String> filesInWorkingTree(String path) throws IOException {
+        Path root = Paths.get("").toAbsolutePath();
+        Path start = root.resolve(path).normalize();
+        if (!start.startsWith(root)) {
+            Main.exitWithError("File does not exist.");
+        }
+        try (Stream<Path> walk = Files.walk(start)) {
+            return walk
+                    .filter(p -> !root.relativize(p).startsWith(".gitlet"))
+                    .filter(Files::isRegularFile)
+                    .map(p -> toFileName(root.relativize(p)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Return the gitlet file name of a working-tree relative path.
+     * @param relative path relative to the working directory
+     */
+    private static String toFileName(Path relative) {
+        StringJoiner name = new StringJoiner("/");
+        relative.forEach(part -> name.add(part.toString()));
+        return name.toString();
     }
 
     /**
@@ -94,22 +200,17 @@ public class Repo {
             return false;
         }
 
-        File blobOfPrevVersion = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-
-        return hasSameContent(currentFile, blobOfPrevVersion);
+        return hasSameContent(currentFile, blobSHA1);
     }
 
     /**
-     * Compares the byte array of the file in CWD and the byte array
-     * saved in the last commit/blob.
+     * Compares the SHA1 of the file in CWD, computed as a stream, with
+     * the SHA1 of the blob saved in the last commit.
      * @param currVersion file in CWD
-     * @param blobOfPrevVersion the blob of the same file saved in current commit
+     * @param trackedBlobSHA1 the blob of the same file saved in current commit
      * */
-    public boolean hasSameContent(File currVersion, File blobOfPrevVersion) {
-        Blob blob = Blob.load(blobOfPrevVersion);
-        byte[] versionInCurrCommit = blob.getFileContent();
-        byte[] versionInCWD = Utils.readContents(currVersion);
-        return Arrays.equals(versionInCurrCommit, versionInCWD);
+    public boolean hasSameContent(File currVersion, String trackedBlobSHA1) {
+        return Utils.sha1(currVersion).equals(trackedBlobSHA1);
     }
 
     /**
@@ -122,6 +223,7 @@ public class Repo {
     public void commit(String[] args) throws IOException {
         Main.validateNumArgs(args);
         String message = args[1];
+        checkNoRebaseInProgress();
 
         stagingArea = stagingArea.load();
 
@@ -138,12 +240,14 @@ public class Repo {
 
         Commit commit = new Commit(message, currHeadSHA1, false, snapshot);
         commit.save();
+        Rerere.recordResolutions(snapshot);
 
-        Branch currBranch = Utils
-                .readObject((Utils.join(Main.GITLET_FOLDER, "HEAD")), Branch.class);
+        Branch currBranch = Branch.load(Main.HEAD);
 
-        head.setGlobalHEAD(currBranch.getName(), commit);
-        head.setBranchHEAD(currBranch.getName(), commit);
+        if (!Head.advance(currBranch.getName(), currHeadSHA1, commit,
+                "commit: " + commit.getMessage())) {
+            Main.exitWithError(BRANCH_MOVED);
+        }
 
         stagingArea = new Staging();
         stagingArea.save();
@@ -157,7 +261,7 @@ public class Repo {
         Commit HEAD = Head.getGlobalHEAD();
         Staging stage = stagingArea.load();
 
-        Map<String, String> parentSnapshot = HEAD.getSnapshot();
+        Map<String, String> parentSnapshot = new HashMap<>(HEAD.getSnapshot());
         Map<String, String> stagedForAdditionFiles = stage.getFilesStagedForAddition();
         Set<String> stagedForRemovalFiles = stage.getFilesStagedForRemoval();
 
@@ -172,6 +276,89 @@ public class Repo {
         return parentSnapshot;
     }
 
+    /**
+     * Print the differences between the working directory and the
+     * index, between the index and the current commit (--cached), or
+     * between two commits.
+     * @param args user's input of commands and operands
+     */
+    public void diff(String[] args) {
+        Main.validateNumArgs(args);
+        if (args.length == 1) {
+            Map<String, String> index = updateSnapshot();
+            Map<String, String> working = index.keySet().parallelStream()
+                    .filter(fileName -> Utils.join(".", fileName).isFile())
+                    .collect(Collectors.toConcurrentMap(fileName -> fileName,
+                            fileName -> Utils.sha1(Utils.join(".", fileName))));
+            Diff.print(index, working, Diff::blobContent, Diff::workingContent, System.out);
+        } else if (args[1].equals("--cached")) {
+            Diff.print(Head.getGlobalHEAD().getSnapshot(), updateSnapshot(),
+                    Diff::blobContent, Diff::blobContent, System.out);
+        } else {
+            Commit from = findCommit(args[1]);
+            Commit to = findCommit(args[2]);
+            Diff.print(from.getSnapshot(), to.getSnapshot(),
+                    Diff::blobContent, Diff::blobContent, System.out);
+        }
+    }
+
+    /**
+     * Print the files added, modified and deleted between two commits,
+     * with their line counts for --stat and --numstat. With -M, deleted
+     * and added files that are similar are shown as renames, and with -C
+     * added files can also be shown as copies of modified files.
+     * @param args [-M | -C] [--name-status | --stat | --numstat] commit1 commit2
+     */
+    public void diffTree(String[] args) {
+        Main.validateNumArgs(args);
+        String format = "--name-status";
+        boolean findRenames = false;
+        boolean findCopies = false;
+        for (int i = 1; i < args.length - 2; i++) {
+            if (args[i].equals("-M")) {
+                findRenames = true;
+            } else if (args[i].equals("-C")) {
+                findRenames = true;
+                findCopies = true;
+            } else {
+                format = args[i];
+            }
+        }
+        Commit from = findCommit(args[args.length - 2]);
+        Commit to = findCommit(args[args.length - 1]);
+        List<TreeDiff.Change> changes = TreeDiff.compare(from.getSnapshot(), to.getSnapshot());
+        if (findRenames) {
+            changes = RenameDetector.detect(changes, findCopies,
+                    RenameDetector.DEFAULT_THRESHOLD);
+        }
+        if (format.equals("--name-status")) {
+            TreeDiff.printNameStatus(changes, System.out);
+            return;
+        }
+        TreeDiff.countLines(changes);
+        if (format.equals("--stat")) {
+            TreeDiff.printStat(changes, System.out);
+        } else {
+            TreeDiff.printNumStat(changes, System.out);
+        }
+    }
+
+    /**
+     * Return the commit with the given id, full or abbreviated, or exit
+     * with an error if there is none.
+     * @param commitId the commit id to search
+     */
+    public Commit findCommit(String commitId) {
+        List<String> commits = Utils.plainFilenamesIn(Main.COMMITS_FOLDER);
+        for (String commitSHA1 : commits) {
+            if (commitId.length() <= commitSHA1.length() && findMatchId(commitSHA1, commitId)) {
+                return Commit.load(commitSHA1);
+            }
+        }
+        Main.exitWithError("No commit with that id exists.");
+        return null;
+    }
+
     /**
      * Remove a file from the staging area (hashmap). Unstage the file
      * if it is currently staged for addition. If the file is tracked in
@@ -188,9 +375,7 @@ public class Repo {
             stagingArea.remove(fileName);
         } else if (trackedByCurrCommit(fileName)) {
             stagingArea.unstage(fileName);
-            String CWD = System.getProperty("user.dir");
-            File file = new File(CWD, fileName);
-            Utils.restrictedDelete(file);
+            deleteWorkingFile(fileName);
         } else {
             Main.exitWithError("No reason to remove the file.");
         }
@@ -302,9 +487,7 @@ public class Repo {
 
         if (snapshot.containsKey(filename)) {
             String blobSHA1 = snapshot.get(filename);
-            File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-            Blob blob = Blob.load(blobFile);
-            restoreFileInCWD(blob);
+            restoreFileInCWD(Blob.load(filename, blobSHA1));
         } else {
             Main.exitWithError("File does not exist in that commit.");
         }
@@ -333,9 +516,7 @@ public class Repo {
             commit = commit.getParent();
         }
 
-        File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-        Blob blob = Blob.load(blobFile);
-        restoreFileInCWD(blob);
+        restoreFileInCWD(Blob.load(fileName, blobSHA1));
     }
 
     /** 
@@ -382,7 +563,10 @@ public class Repo {
                     "delete it, or add and commit it first.");
         }
 
-        Head.setGlobalHEAD(branchName, branchHEAD);
+        if (!Worktree.claimBranch(branchName, branchHEAD)) {
+            Main.exitWithError("That branch is already checked out at "
+                    + Worktree.checkedOutAt(branchName, Main.HEAD) + ".");
+        }
         restoreFilesAtBranch(currHEAD, branchHEAD);
 
         stagingArea = new Staging();
@@ -396,10 +580,49 @@ public class Repo {
      * @param blob file blob
      */
     public void restoreFileInCWD(Blob blob) throws IOException {
+        writeWorkingFile(blob.getFileName(), blob);
+    }
+
+    /**
+     * Write the content of a blob to a file in the working directory,
+     * creating its parent directories if they do not exist yet.
+     * @param fileName name of the file relative to the working directory
+     * @param blob file blob
+     */
+    public static void writeWorkingFile(String fileName, Blob blob) {
         String CWD = System.getProperty("user.dir");
-        File file = new File(CWD, blob.getFileName());
-        file.createNewFile();
-        Utils.writeContents(file, blob.getFileContent());
+        File file = new File(CWD, fileName);
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try {
+            blob.restore(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Delete a file from the working directory, along with any parent
+     * directories that become empty.
+     * @param fileName name of the file relative to the working directory
+     */
+    public static void deleteWorkingFile(String fileName) {
+        if (!fileName.contains("/")) {
+            Utils.restrictedDelete(fileName);
+            return;
+        }
+        String CWD = System.getProperty("user.dir");
+        File file = new File(CWD, fileName);
+        if (!file.isFile()) {
+            return;
+        }
+        file.delete();
+        File parent = file.getParentFile();
+        while (!parent.equals(new File(CWD)) && parent.delete()) {
+            parent = parent.getParentFile();
+        }
     }
 
     /**
@@ -437,31 +660,46 @@ public class Repo {
             }
         });
 
+        Promisor.prefetch(overwrite.values());
         overwrite.forEach((file, blobSHA1) -> {
-            File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-            Blob blob = Blob.load(blobFile);
-
-            String CWD = System.getProperty("user.dir");
-            File newFile = new File(CWD, file);
-            try {
-                newFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            Utils.writeContents(newFile, blob.getFileContent());
+            writeWorkingFile(file, Blob.load(file, blobSHA1));
         });
 
         delete.forEach((file, blobSHA1) -> {
-            Utils.restrictedDelete(file);
+            deleteWorkingFile(file);
         });
     }
 
+    /**
+     * Update the working directory from the snapshot FROM, which it
+     * holds now, to the snapshot TO, only writing and deleting the files
+     * whose blobs differ between them.
+     * @param from the snapshot the working directory holds
+     * @param to the snapshot to write
+     */
+    public static void updateWorkingTree(Map<String, String> from, Map<String, String> to) {
+        List<TreeDiff.Change> changes = TreeDiff.compare(from, to);
+        Promisor.prefetch(changes.stream().map(TreeDiff.Change::getNewId)
+                .collect(Collectors.toList()));
+        for (TreeDiff.Change change : changes) {
+            if (change.getNewId() != null) {
+                writeWorkingFile(change.getPath(),
+                        Blob.load(change.getPath(), change.getNewId()));
+            } else {
+                deleteWorkingFile(change.getPath());
+            }
+        }
+    }
+
     /**
      * Create a new reference for current commit node.
      * @param args branch name
      */
     public void branch(String[] args) throws IOException {
         String branchName = args[1];
+        if (!Branch.isValidName(branchName)) {
+            Main.exitWithError("Not a valid branch name.");
+        }
         if (!Branch.hasBranch(branchName)) {
             Branch branch = new Branch(branchName, Head.getGlobalHEAD());
             branch.create();
@@ -471,21 +709,33 @@ public class Repo {
     }
 
     /**
-     * Remove the branch reference.
-     * @param args branch name
+     * Remove the branch references, all in one ref transaction.
+     * @param args branch names
      */
     public void rmBranch(String[] args) {
-        String branchNameToRemove = args[1];
         String currBranchName = currentBranchName();
+        ObjectStore local = ObjectStore.local();
+        RefTransaction transaction = new RefTransaction(local, "branch: deleted");
 
-        if (currBranchName.equals(branchNameToRemove)) {
-            Main.exitWithError("Cannot remove the current branch.");
+        for (int i = 1; i < args.length; i++) {
+            String branchNameToRemove = args[i];
+            if (currBranchName.equals(branchNameToRemove)) {
+                Main.exitWithError("Cannot remove the current branch.");
+            }
+            if (Worktree.checkedOutAt(branchNameToRemove, Main.HEAD) != null) {
+                Main.exitWithError("Cannot remove a branch checked out in another working tree.");
+            }
+            String sha1 = local.branchSHA1(branchNameToRemove);
+            if (sha1 == null) {
+                Main.exitWithError("A branch with that name does not exist.");
+            }
+            transaction.delete(branchNameToRemove, sha1);
         }
-        if (Branch.hasBranch(branchNameToRemove)) {
-            File branch = Utils.join(Main.HEADS_REFS_FOLDER, branchNameToRemove);
-            branch.delete();
-        } else {
-            Main.exitWithError("A branch with that name does not exist.");
+        if (!transaction.commit()) {
+            Main.exitWithError(BRANCH_MOVED);
+        }
+        for (int i = 1; i < args.length; i++) {
+            local.deleteEmptyDirs(args[i]);
         }
     }
 
@@ -493,10 +743,8 @@ public class Repo {
      * Return the name of the current branch.
      */
     public String currentBranchName() {
-        File branchFile = (Utils.join(Main.GITLET_FOLDER, "HEAD"));
-        return Utils
-                .readObject(branchFile, Branch.class)
-                .getName();
+        File branchFile = Main.HEAD;
+        return Branch.load(branchFile).getName();
     }
 
     /**
@@ -507,6 +755,7 @@ public class Repo {
      */
     public void reset(String[] args) {
         String commitId = args[1];
+        checkNoRebaseInProgress();
 
         File commitDir = Utils.join(Main.OBJECTS_FOLDER, "commits");
         String[] commits = commitDir.list();
@@ -537,7 +786,8 @@ public class Repo {
         }
 
         Map<String, String> checkoutSnapshot = targetCommit.getSnapshot();
-        Map<String, String> currSnapshot = Head.getGlobalHEAD().getSnapshot();
+        Commit currHEAD = Head.getGlobalHEAD();
+        Map<String, String> currSnapshot = currHEAD.getSnapshot();
         Map<String, String> restore = new HashMap<>();
 
         checkoutSnapshot.forEach((fileName, blobSHA1) -> {
@@ -546,26 +796,19 @@ public class Repo {
 
         currSnapshot.forEach((fileName, blobSHA1) -> {
             if (!checkoutSnapshot.containsKey(fileName)) {
-                Utils.restrictedDelete(fileName);
+                deleteWorkingFile(fileName);
             }
         });
 
+        Promisor.prefetch(restore.values());
         restore.forEach((file, blobSHA1) -> {
-            File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-            Blob blob = Blob.load(blobFile);
-
-            String CWD = System.getProperty("user.dir");
-            File newFile = new File(CWD, file);
-            try {
-                newFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            Utils.writeContents(newFile, blob.getFileContent());
+            writeWorkingFile(file, Blob.load(file, blobSHA1));
         });
 
-        Head.setGlobalHEAD(currentBranchName(), targetCommit);
-        Head.setBranchHEAD(currentBranchName(), targetCommit);
+        if (!Head.advance(currentBranchName(), currHEAD.getSHA(), targetCommit,
+                "reset: moving to " + targetCommit.getSHA())) {
+            Main.exitWithError(BRANCH_MOVED);
+        }
 
         stagingArea = new Staging();
         stagingArea.save();
@@ -577,21 +820,7 @@ public class Repo {
      * @param givenBranchHEAD name of the checkout branch
      * */
     public boolean hasUntrackedFilesForCheckoutBranch(Commit givenBranchHEAD) {
-        List<String> untrackedFiles = new ArrayList<String>();
-        stagingArea = stagingArea.load();
-        List<String> fileInCWD = Utils.plainFilenamesIn("./");
-
-        for (String fileName : fileInCWD) {
-            if (!fileName.equals(".DS_Store")
-                && !fileName.equals(".gitignore")
-                && !fileName.equals("proj2.iml")) {
-                if (!Head.getGlobalHEAD().getSnapshot().containsKey(fileName)
-                        && givenBranchHEAD.getSnapshot().containsKey(fileName)) {
-                    untrackedFiles.add(fileName);
-                }
-            }
-        }
-        return untrackedFiles.size() > 0;
+        return hasUntrackedFilesIn(givenBranchHEAD);
     }
 
     /**
@@ -608,21 +837,36 @@ public class Repo {
      *  @param givenBranchHEAD name of the checkout branch
      * */
     public boolean hasUntrackedFilesForReset(Commit givenBranchHEAD) {
-        List<String> untrackedFiles = new ArrayList<String>();
+        return hasUntrackedFilesIn(givenBranchHEAD);
+    }
+
+    /**
+     * Return true if a file anywhere in the working tree is untracked
+     * in the current commit and tracked in GIVEN, so that moving to
+     * GIVEN would overwrite it. Files in subdirectories are listed the
+     * same way add lists them.
+     * @param given the commit to move to
+     */
+    private boolean hasUntrackedFilesIn(Commit given) {
         stagingArea = stagingArea.load();
-        List<String> fileInCWD = Utils.plainFilenamesIn("./");
-
-        for (String fileName : fileInCWD) {
-            if (!fileName.equals(".DS_Store") && !fileName.equals(".gitignore") && !fileName.equals(
-                    "proj2.iml")) {
-                if (!Head.getGlobalHEAD().getSnapshot().containsKey(fileName)
-                        && givenBranchHEAD.getSnapshot().containsKey(fileName)) {
-                    untrackedFiles.add(fileName);
-                }
+        Map<String, String> currSnapshot = Head.getGlobalHEAD().getSnapshot();
+        Map<String, String> givenSnapshot = given.getSnapshot();
+        List<String> filesInCWD;
+        try {
+            filesInCWD = filesInWorkingTree(".");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (String fileName : filesInCWD) {
+            if (!fileName.equals(".DS_Store")
+                    && !fileName.equals(".gitignore")
+                    && !fileName.equals("proj2.iml")
+                    && !currSnapshot.containsKey(fileName)
+                    && givenSnapshot.containsKey(fileName)) {
+                return true;
             }
         }
-
-        return untrackedFiles.size() > 0;
+        return false;
     }
 
     /**
@@ -650,39 +894,25 @@ public class Repo {
             }
         });
 
+        Promisor.prefetch(overwrite.values());
         overwrite.forEach((file, blobSHA1) -> {
-            File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-            Blob blob = Blob.load(blobFile);
-            try {
-                restoreFileInCWD(blob);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            writeWorkingFile(file, Blob.load(file, blobSHA1));
         });
 
-        delete.forEach((file, blobSHA1) -> Utils.restrictedDelete(file));
+        delete.forEach((file, blobSHA1) -> deleteWorkingFile(file));
     }
 
     /**
-     * Print blob
+     * Print the content of a blob, copied from the object store as is.
      * @param blobSHA the SHA id of a blob
      * */
-    public String printBlob(String blobSHA) {
-        File blobDir = Utils.join(Main.OBJECTS_FOLDER, "blobs");
-        String[] blobsFileNames = blobDir.list();
-        File currBlobFile = null;
-
-        for (String blobFileName : blobsFileNames) {
-            if (blobFileName.equals(blobSHA)) {
-                currBlobFile = Utils.join(blobDir, blobFileName);
-            }
+    public void printBlob(String blobSHA) {
+        try (InputStream in = Blob.load(null, blobSHA).openStream()) {
+            in.transferTo(System.out);
+            System.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-
-        Blob blobObj = Blob.load(currBlobFile);
-
-        String currContent = new String(blobObj.getFileContent(),
-                StandardCharsets.UTF_8);
-        return currContent;
     }
 
     /**
@@ -691,11 +921,57 @@ public class Repo {
      */
     public void merge(String[] args) throws IOException {
         String givenBranch = args[1];
+        checkNoRebaseInProgress();
 
         merge.failureCases(givenBranch);
         merge.merge(givenBranch);
     }
 
+    /**
+     * Merge two branches or commits without changing the working
+     * directory, the staging area or any branch, and print the merged
+     * snapshot followed by its conflicts. The merged and conflicted
+     * files are saved in the object store.
+     * @param args the two branch names or commit ids to merge
+     */
+    public void mergeTree(String[] args) {
+        Main.validateNumArgs(args);
+        Commit ours = findBranchOrCommit(args[1]);
+        Commit theirs = findBranchOrCommit(args[2]);
+        MergeEngine.MergeResult result = MergeEngine.merge(ours, theirs);
+        result.getSnapshot().forEach((fileName, blobSHA1) ->
+                System.out.println(blobSHA1 + "\t" + fileName));
+        if (result.hasConflicts()) {
+            System.out.println();
+            for (MergeEngine.Conflict conflict : result.getConflicts()) {
+                System.out.println("CONFLICT (" + conflict.getType()
+                        + "): Merge conflict in " + conflict.getPath());
+            }
+        }
+    }
+
+    /**
+     * Return true if the branch NAME was fetched from a remote.
+     * @param name the name of a branch
+     */
+    private static boolean isRemoteBranch(String name) {
+        int slash = name.indexOf('/');
+        return slash > 0 && (Remote.load(name.substring(0, slash)) != null
+                || name.substring(0, slash).equals("bundle"));
+    }
+
+    /**
+     * Return the head commit of the branch NAME, or else the commit with
+     * the id NAME.
+     * @param name a branch name or a commit id
+     */
+    private Commit findBranchOrCommit(String name) {
+        if (Branch.hasBranch(name)) {
+            return Head.getBranchHEAD(name);
+        }
+        return findCommit(name);
+    }
+
     /**
      * A Merge Class for comparing commit nodes and handling merge conflicts.
      * @param branchName the name of branch to merge into
@@ -705,22 +981,9 @@ public class Repo {
         public void merge(String branchName) throws IOException {
             Commit currHEAD = Head.getGlobalHEAD();
             Commit givenHEAD = Head.getBranchHEAD(branchName);
-            String originalBranchName = Utils.readObject(
-                    (Utils.join(Main.GITLET_FOLDER, "HEAD")), Branch.class)
-                    .getName();
-
-            stagingArea = stagingArea.load();
-
-            Commit SP = latestCommonAncestor(currHEAD, givenHEAD);
-
-            Map<String, String> curr = currHEAD.getSnapshot();
-            Map<String, String> given = givenHEAD.getSnapshot();
-            Map<String, String> sp = SP.getSnapshot();
+            String originalBranchName = Branch.load(Main.HEAD).getName();
 
-            Map<String, String> mergeMap = new HashMap<>();
-            Map<String, String> bothDeleted = new HashMap<>();
-            Map<String, String> deletedAtOne = new HashMap<>();
-            boolean withConflict = false;
+            Commit SP = MergeEngine.latestCommonAncestor(currHEAD, givenHEAD);
 
             // 1. If the split point is the same commit as the given branch, then we
             // do nothing; the merge is complete, and the operation ends with the message
@@ -733,511 +996,765 @@ public class Repo {
             // 2. If the split point is the current branch, then the effect is to check
             // out the given branch, and the operation ends after printing the message
             // Current branch fast-forwarded.
+            // A branch fetched from a remote is never checked out; the
+            // current branch moves up to it instead.
             if (currHeadIsSP(SP)) {
-                checkoutBranch(branchName);
+                if (isRemoteBranch(branchName)) {
+                    if (!Head.advance(originalBranchName, currHEAD.getSHA(), givenHEAD,
+                            "merge " + branchName + ": Fast-forward")) {
+                        Main.exitWithError(BRANCH_MOVED);
+                    }
+                    updateWorkingTree(currHEAD.getSnapshot(), givenHEAD.getSnapshot());
+                } else {
+                    checkoutBranch(branchName);
+                }
                 System.out.println("Current branch fast-forwarded.");
                 return;
             }
 
-            condition3(sp, given, curr, mergeMap);
-            condition4(sp, given, curr, mergeMap);
-            condition5(sp, given, curr, mergeMap, bothDeleted);
-            condition6(sp, curr, mergeMap);
-            condition7(sp, given, mergeMap);
+            // 3 - 10. classify every file once in a single sorted pass over
+            // the split point, current and given snapshots, following the
+            // files renamed by either branch, and merge the files changed
+            // in both into the object store.
+            MergeEngine.MergeResult result = MergeEngine.merge(
+                    SP.getSnapshot(), currHEAD.getSnapshot(), givenHEAD.getSnapshot());
 
-            boolean hasConflict = false;
-
-            if (condition8And9(sp, given, curr, deletedAtOne, mergeMap)
-                    || condition10(sp, given, curr, mergeMap)) {
-                hasConflict = true;
-            }
+            commitMerge(branchName, originalBranchName, result.getSnapshot(),
+                    result.getRemoved());
+            updateWorkingTree(currHEAD.getSnapshot(), result.getSnapshot());
+            printReusedResolutions(result);
 
-            stagingArea.save();
-            commitMerge(branchName, originalBranchName);
-            restoreFilesAtMerge(mergeMap, deletedAtOne, bothDeleted);
-
-            if (hasConflict) {
+            if (result.hasConflicts()) {
+                Rerere.recordConflicts(result.getConflicts());
                 Main.exitWithError("Encountered a merge conflict.");
             }
         }
 
-        public void restoreFilesAtMerge(Map<String, String> mergeMap,
-                                        Map<String, String> deleteAtOne,
-                                        Map<String, String> bothDeleted) {
-
-            mergeMap.forEach((file, blobSHA1) -> {
-                File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-                Blob blob = Blob.load(blobFile);
+        public void commitMerge(String branchName, String originalBranchName,
+                                Map<String, String> mergeSnapshot,
+                                HashSet<String> removed) throws IOException {
+            String commitMessage = "Merged " + branchName + " into " + originalBranchName + ". ";
+            String firstParentSHA1 = Head.getBranchHEAD(originalBranchName).getSHA();
+            String secondParentSHA1 = Head.getBranchHEAD(branchName).getSHA();
 
-                String CWD = System.getProperty("user.dir");
-                File newFile = new File(CWD, file);
-                try {
-                    newFile.createNewFile();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                Utils.writeContents(newFile, blob.getFileContent());
-            });
+            Commit mergeCommit = new Commit(commitMessage, firstParentSHA1, secondParentSHA1,
+                    false, mergeSnapshot, removed);
 
+            mergeCommit.saveMergeCommit();
 
-            // TODO: delete files
-            deleteAtOne.forEach((file, blobSHA1) -> {
-                Utils.restrictedDelete(file);
-            });
+            if (!Head.advance(originalBranchName, firstParentSHA1, mergeCommit,
+                    "commit (merge): " + commitMessage)) {
+                Main.exitWithError(BRANCH_MOVED);
+            }
 
-            bothDeleted.forEach((file, blobSHA1) -> {
-                Utils.restrictedDelete(file);
-            });
+            stagingArea = new Staging();
+            stagingArea.save();
         }
 
-        // case 3:
-        // givenBranch: modified && currBranch: unmodified (=SP)
-        // -> copy givenBranch key-value pair, add into hashmap (stageToBeAdded), and auto staged
-        public void condition3(Map<String, String> SP,
-                               Map<String, String> given,
-                               Map<String, String> curr,
-                               Map<String, String> mergeMap) {
-            HashMap<String, String> sameOnCurrAndSP = new HashMap<>();
-            HashMap<String, String> diffOnGivenAndSP = new HashMap<>();
-
-            // compare SP and Curr, find same file name with same content
-            SP.forEach((spFileName, spBlob) -> {
-                curr.forEach((currFileName, currBlob) -> {
-                    if (spFileName.equals(currFileName) && spBlob.equals(currBlob)) {
-                        sameOnCurrAndSP.put(currFileName, currBlob);
-                    }
-                });
-            });
-
-            // compare SP and Given, find same file name with different content
-            SP.forEach((spFileName, spBlob) -> {
-                given.forEach((givenFileName, givenBlob) -> {
-                    if (spFileName.equals(givenFileName) && !spBlob.equals(givenBlob)) {
-                        diffOnGivenAndSP.put(givenFileName, givenBlob);
-                    }
-                });
-            });
-
-            // find files modified on Given but not on Curr since SP
-            //            {hi.txt: sdijs[dok[wq} hey **
-            sameOnCurrAndSP.forEach((sameFileName, sameBlob) -> {
-                diffOnGivenAndSP.forEach((diffFileName, diffBlob) -> {
-                    if (sameFileName.equals(diffFileName)) {
-                        mergeMap.put(diffFileName, diffBlob);
-                        stagingArea.add(diffFileName, diffBlob);
-                    }
-                });
-            });
+        // edge cases:
+        // 1. If the split point is the same commit as the given branch, then we
+        // do nothing; the merge is complete, and the operation ends with the message
+        // Given branch is an ancestor of the current branch.
+        public boolean branchHeadIsSP(Commit SP, Commit branchHead) {
+            return SP.getSHA().equals(branchHead.getSHA());
         }
 
-        // case 4. currBranch: modified && givenBranch: unmodified (=SP)
-        // -> stay the same (continue?)
-        public void condition4(Map<String, String> SP,
-                               Map<String, String> given,
-                               Map<String, String> curr,
-                               Map<String, String> mergeMap) {
-
-            HashMap<String, String> sameOnGivenAndSP = new HashMap<>();
-            HashMap<String, String> diffOnCurrAndSP = new HashMap<>();
-
-            // compare SP and Given, find same file name with same content
-            SP.forEach((spFileName, spBlob) -> {
-                given.forEach((givenFileName, givenBlob) -> {
-                    if (spFileName.equals(givenFileName) && spBlob.equals(givenBlob)) {
-                        sameOnGivenAndSP.put(givenFileName, givenBlob);
-                    }
-                });
-            });
-
-
-            // compare SP and Curr, find same file name with different content
-            SP.forEach((spFileName, spBlob) -> {
-                curr.forEach((currFileName, currBlob) -> {
-                    if (spFileName.equals(currFileName) && !spBlob.equals(currBlob)) {
-                        diffOnCurrAndSP.put(currFileName, currBlob);
-                    }
-                });
-            });
+        // 2. If the split point is the current branch, then the effect is to check
+        // out the given branch, and the operation ends after printing the message
+        // Current branch fast-forwarded.
+        public boolean currHeadIsSP(Commit SP) {
+            return Head.getGlobalHEAD().getSHA().equals(SP.getSHA());
+        }
 
-            // find files modified on Curr but not on Given since SP
-            sameOnGivenAndSP.forEach((sameFileName, sameBlob) -> {
-                diffOnCurrAndSP.forEach((diffFileName, diffBlob) -> {
-                    if (sameFileName.equals(diffFileName)) {
-                        mergeMap.put(diffFileName, diffBlob);
-                        stagingArea.add(diffFileName, diffBlob);
-                    }
-                });
-            });
 
+        public void exitWithMessage(String message) {
+            System.out.println(message);
+            System.exit(0);
         }
 
-        // 5. Modified: currBranch && givenBranch in the same way
-        // both are different from SP, but Curr and given are the same
-        // OR, both are deleted on Curr and given branch
-        // -> pick currentBranch key-value pair, add into map
-        public void condition5(Map<String, String> SP,
-                               Map<String, String> given,
-                               Map<String, String> curr,
-                               Map<String, String> mergeMap,
-                               Map<String, String> bothDeleted) {
-
-            for (String SPFileName : SP.keySet()) {
-                boolean insideCurr = curr.containsKey(SPFileName);
-                boolean insideGiven = given.containsKey(SPFileName);
-                String SPBlob = SP.get(SPFileName);
-                String givenBlob = given.get(SPFileName);
-                String currBlob = curr.get(SPFileName);
-
-                // both are modified in the same way
-                if (insideCurr && insideGiven) {
-                    // check if give blob is different from SP blob
-                    // check if curr blob is different from SP blob
-                    // check if given blob and curr blob are the same version
-                    if (!givenBlob.equals(SPBlob)
-                            && !currBlob.equals(SPBlob)
-                            && givenBlob.equals(currBlob)) {
-                        mergeMap.put(SPFileName, currBlob);
-                        stagingArea.add(SPFileName,currBlob);
-                    }
-                }
+        //failure case
+        //1. stagingArea is present
+        //2. given branch name does not exit
+        //3. attempting to merge the branch it self
+        //4. untracked files in the way
+        public void failureCases(String branchName) {
+            if (stagingArea.load().hasUncommitedChanges()) {
+                exitWithMessage("You have uncommitted changes.");
+            }
 
-                // both are deleted
-                if (!insideCurr && !insideGiven) {
-                    bothDeleted.put(SPFileName, SPBlob);
-                    stagingArea.unstage(SPFileName); // TODO: do we need to save SPBlob?
-                }
+            if (!Branch.hasBranch(branchName)) {
+                exitWithMessage("A branch with that name does not exist.");
             }
 
-        }
+            if (branchName.equals(currentBranchName())) {
+                exitWithMessage("Cannot merge a branch with itself.");
+            }
 
-        // 6. File not in SP && File in curr
-        // -> add curr file and blob into mergeMap
-        public void condition6(Map<String, String> SP,
-                               Map<String, String> curr,
-                               Map<String, String> mergeMap) {
+            Commit givenBranchHead = Head.getBranchHEAD(branchName);
 
-            for (String currFileName : curr.keySet()) {
-                if (!SP.keySet().contains(currFileName)) {
-                    String currBlob = curr.get(currFileName);
-                    mergeMap.put(currFileName, currBlob);
-                    stagingArea.add(currFileName, currBlob);
-                }
+            if (hasUntrackedFilesForCheckoutBranch(givenBranchHead)) {
+                exitWithMessage("There is an untracked file in the way; delete it, " +
+                        "or add and commit it first.");
             }
+        }
+    }
 
+    /**
+     * Replay the commits of the current branch since its split point
+     * with the given branch on top of the head of the given branch.
+     * Each commit is replayed as an in-memory merge of its changes into
+     * the snapshot replayed before it, and the working directory is only
+     * written once, at the end, or when a commit stops on a conflict.
+     * A stopped rebase is resumed with --continue, once the conflicts
+     * are resolved and added, or undone with --abort.
+     * @param args a branch name, --continue or --abort
+     */
+    public void rebase(String[] args) throws IOException {
+        Main.validateNumArgs(args);
+        RebaseState state = RebaseState.load();
+        if (args[1].equals("--continue") || args[1].equals("--abort")) {
+            if (state == null) {
+                Main.exitWithError("No rebase in progress.");
+            }
+            if (args[1].equals("--abort")) {
+                abortRebase(state);
+            } else {
+                continueRebase(state);
+            }
+            return;
+        }
+        if (state != null) {
+            Main.exitWithError(REBASE_IN_PROGRESS);
         }
 
-        // 7. File not in SP && File in given
-        // -> add given file and given blob into merge map
-        public void condition7(Map<String, String> SP,
-                               Map<String, String> given,
-                               Map<String, String> mergeMap) {
+        String branchName = args[1];
+        if (stagingArea.load().hasUncommitedChanges()) {
+            Main.exitWithError("You have uncommitted changes.");
+        }
+        if (!Branch.hasBranch(branchName)) {
+            Main.exitWithError("A branch with that name does not exist.");
+        }
+        String currBranchName = currentBranchName();
+        if (branchName.equals(currBranchName)) {
+            Main.exitWithError("Cannot rebase a branch onto itself.");
+        }
+        Commit currHEAD = Head.getGlobalHEAD();
+        Commit branchHEAD = Head.getBranchHEAD(branchName);
+        if (hasUntrackedFilesForCheckoutBranch(branchHEAD)) {
+            Main.exitWithError("There is an untracked file in the way; "
+                    + "delete it, or add and commit it first.");
+        }
 
-            for (String givenFileName : given.keySet()) {
-                if (!SP.containsKey(givenFileName)){
-                    String givenBlob = given.get(givenFileName);
-                    mergeMap.put(givenFileName, givenBlob);
-                    stagingArea.add(givenFileName, givenBlob);
-                }
+        Commit splitPoint = MergeEngine.latestCommonAncestor(currHEAD, branchHEAD);
+        String splitSHA1 = splitPoint == null ? INIT_PARENT_SHA1 : splitPoint.getSHA();
+        if (splitSHA1.equals(branchHEAD.getSHA())) {
+            System.out.println("Given branch is an ancestor of the current branch.");
+            return;
+        }
+        if (splitSHA1.equals(currHEAD.getSHA())) {
+            if (!Head.advance(currBranchName, currHEAD.getSHA(), branchHEAD,
+                    "rebase: fast-forward to " + branchName)) {
+                Main.exitWithError(BRANCH_MOVED);
             }
-
+            updateWorkingTree(currHEAD.getSnapshot(), branchHEAD.getSnapshot());
+            System.out.println("Current branch fast-forwarded.");
+            return;
         }
 
-        // 8 & 9. File in SP && current: unmodified && given: absent (treat like modified)
-        // -> removed (untracked)
-        // File in SP && given: unmodified && curr: absent (treat like modified)
-        // -> remain absent (unchanged?)
-        public boolean condition8And9(Map<String, String> SP,
-                                      Map<String, String> given,
-                                      Map<String, String> curr,
-                                      Map<String, String> deletedAtOne,
-                                      Map<String, String> mergeMap) throws IOException {
-            boolean hasConflict = false;
-            for (String SPFileName : SP.keySet()) {
-                boolean insideCurr = curr.containsKey(SPFileName);
-                boolean insideGiven = given.containsKey(SPFileName);
-                String SPBlob = SP.get(SPFileName);
-                String givenBlob = given.get(SPFileName);
-                String currBlob = curr.get(SPFileName);
-
-
-                // 8. absent at given, curr blob is the same version as SP blob
-                if (insideCurr && !insideGiven) {
-                    if (currBlob.equals(SPBlob)) {
-                        deletedAtOne.put(SPFileName, givenBlob);
-                        stagingArea.unstage(SPFileName);
-                    } else {
-                        // 10.3 Conflict: File in SP && absent: given && modified: current
-                        hasConflict = true;
-                        createConflictFile(currBlob, givenBlob);
-                        if (mergeMap.containsKey(SPFileName)) {
-                            mergeMap.remove(SPFileName);
-                        }
-                    }
+        LinkedList<String> todo = new LinkedList<>();
+        for (Commit commit = currHEAD; !commit.getSHA().equals(splitSHA1)
+                && !commit.getFirstParentSHA1().equals(INIT_PARENT_SHA1);
+                commit = commit.getParent()) {
+            todo.addFirst(commit.getSHA());
+        }
+        replay(new RebaseState(currBranchName, currHEAD, branchHEAD.getSHA(), todo));
+    }
 
-                }
+    /**
+     * Exit with an error if a rebase is stopped on a conflict. While it
+     * is, HEAD points at the commits the rebase wrote but the branch
+     * still points at its original head, so HEAD cannot move the branch.
+     */
+    static void checkNoRebaseInProgress() {
+        if (Main.REBASE_STATE.exists()) {
+            Main.exitWithError(REBASE_IN_PROGRESS);
+        }
+    }
 
-                // 9. absent at curr, present at given
-                if (!insideCurr && insideGiven) {
-                    if (givenBlob.equals(SPBlob)) {
-                        deletedAtOne.put(SPFileName, currBlob);
-                        stagingArea.unstage(SPFileName);
-                    } else {
-                        // 10.2 Conflict File in SP && absent: current && modified: given
-                        hasConflict = true;
-                        createConflictFile(currBlob, givenBlob);
-                        if (mergeMap.containsKey(SPFileName)) {
-                            mergeMap.remove(SPFileName);
-                        }
-                    }
-                }
-                // 10.1 Conflict: SP != curr != given
-                if (insideCurr && insideGiven) {
-                    if (!givenBlob.equals(SPBlob)
-                            && !givenBlob.equals(currBlob)
-                            && !currBlob.equals(SPBlob)) {
-                        hasConflict = true;
-                        createConflictFile(currBlob, givenBlob);
-                        if (mergeMap.containsKey(SPFileName)) {
-                            mergeMap.remove(SPFileName);
-                        }
-                    }
-                }
+    /**
+     * Commit the resolved conflicts of a stopped rebase as the commit
+     * that stopped, and replay the rest.
+     * @param state the state of the stopped rebase
+     */
+    private void continueRebase(RebaseState state) throws IOException {
+        Commit stopped = Commit.load(state.next());
+        Map<String, String> resolved = updateSnapshot();
+        for (String fileName : state.getConflicts()) {
+            String blobSHA1 = resolved.get(fileName);
+            if (blobSHA1 == null) {
+                continue;
             }
-
-            return hasConflict;
-        }
-
-        // 10.4 Conflict: File not in SP && Curr != given
-        public boolean condition10(Map<String, String> SP,
-                                   Map<String, String> given,
-                                   Map<String, String> curr,
-                                   Map<String, String> mergeMap) throws IOException {
-            boolean hasConflict = false;
-            for (String givenFileName : given.keySet()) {
-                String givenBlob = given.get(givenFileName);
-                String currBlob = curr.get(givenFileName);
-                if (curr.containsKey(givenFileName) && !SP.containsKey(givenFileName)) {
-                    if (!currBlob.equals(givenBlob)) {
-                        hasConflict = true;
-                        createConflictFile(currBlob, givenBlob);
-                        if (mergeMap.containsKey(givenFileName)) {
-                            mergeMap.remove(givenFileName);
-                        }
-                    }
+            try (InputStream in = Blob.load(fileName, blobSHA1).openStream()) {
+                if (ContentMerge.hasConflictMarkers(in)) {
+                    Main.exitWithError("Resolve the conflicts in " + fileName
+                            + " and add it before rebase --continue.");
                 }
             }
-            return hasConflict;
         }
+        Commit commit = new Commit(stopped.getMessage(), state.getOnto(), false, resolved);
+        commit.save();
+        Rerere.recordResolutions(resolved);
+        state.setWorkingSnapshot(resolved);
+        state.advance(commit.getSHA());
+        stagingArea = new Staging();
+        stagingArea.save();
+        replay(state);
+    }
 
-        public void createConflictFile(String currBlob, String givenBlob) throws IOException {
-            File blobDir = Utils.join(Main.OBJECTS_FOLDER, "blobs");
-            String[] blobsFileNames = blobDir.list();
-
-            File currBlobFile = null;
-            File givenBlobFile = null;
-
-            for (String blobFileName : blobsFileNames) {
-                if (blobFileName.equals(currBlob)) {
-                    currBlobFile = Utils.join(blobDir, blobFileName);
-                }
-                if (blobFileName.equals(givenBlob)) {
-                    givenBlobFile = Utils.join(blobDir, blobFileName);
-                }
+    /**
+     * Undo a stopped rebase, putting the branch, the staging area and
+     * the working directory back as they were before it started.
+     * @param state the state of the stopped rebase
+     */
+    private void abortRebase(RebaseState state) {
+        Commit original = Commit.load(state.getOriginalHead());
+        Map<String, String> staged = updateSnapshot();
+        boolean moved = new RefTransaction(ObjectStore.local(), "rebase: aborted")
+                .update(state.getBranchName(), state.getOriginalHead(), original)
+                .updateHead(Main.HEAD, state.getHead(), state.getBranchName(), original)
+                .commit();
+        if (!moved) {
+            Main.exitWithError(BRANCH_MOVED);
+        }
+        updateWorkingTree(staged, original.getSnapshot());
+        for (String fileName : state.getConflicts()) {
+            String blobSHA1 = original.getSnapshot().get(fileName);
+            if (blobSHA1 != null) {
+                writeWorkingFile(fileName, Blob.load(fileName, blobSHA1));
+            } else if (!staged.containsKey(fileName)) {
+                deleteWorkingFile(fileName);
             }
+        }
+        stagingArea = new Staging();
+        stagingArea.save();
+        RebaseState.clear();
+    }
 
-            if (currBlobFile != null && givenBlobFile != null) {
-
-                Blob currBlobObj = Utils.readObject(currBlobFile, Blob.class);
-                Blob givenBlobObj = Utils.readObject(givenBlobFile, Blob.class);
-
-                String CWD = System.getProperty("user.dir");
-                File conflictFile = new File(CWD, currBlobObj.getFileName());
-
-                String currContent = new String(currBlobObj.getFileContent(),
-                        StandardCharsets.UTF_8);
-                String givenContent = new String(givenBlobObj.getFileContent(),
-                        StandardCharsets.UTF_8);
-
-                Utils.writeContents(conflictFile,
-                        "<<<<<<< HEAD\n",
-                        currContent,
-                        "=======\n",
-                        givenContent,
-                        ">>>>>>>",
-                        System.lineSeparator());
-
-                Blob conflictFileBlob = new Blob(currBlobObj.getFileName());
-                conflictFileBlob.save();
-                stagingArea.add(currBlobObj.getFileName(), conflictFileBlob.getBlobSHA1());
-                stagingArea.save();
-            } else if (currBlobFile == null && givenBlob != null) {
-                condition10_2And10_3(givenBlobFile, "curr");
-            } else if (currBlobFile != null) {
-                condition10_2And10_3(currBlobFile, "given");
+    /**
+     * Replay the commits left in STATE. Each commit becomes a merge of
+     * the changes it made to its parent into the last replayed snapshot,
+     * and commits that change nothing any more are dropped. On a
+     * conflict, the merged files are staged and written to the working
+     * directory, the state is saved and the rebase stops.
+     * @param state the state of the rebase
+     */
+    private void replay(RebaseState state) throws IOException {
+        Commit onto = Commit.load(state.getOnto());
+        while (state.hasNext()) {
+            Commit original = Commit.load(state.next());
+            MergeEngine.MergeResult result = MergeEngine.merge(
+                    original.getParent().getSnapshot(), onto.getSnapshot(),
+                    original.getSnapshot());
+            printReusedResolutions(result);
+            if (result.hasConflicts()) {
+                stopRebase(state, onto, result);
+                return;
             }
+            if (!result.getSnapshot().equals(onto.getSnapshot())) {
+                Commit commit = new Commit(original.getMessage(), onto.getSHA(),
+                        false, result.getSnapshot());
+                commit.save();
+                onto = commit;
+            }
+            state.advance(onto.getSHA());
         }
 
-        public void condition10_2And10_3(File presentBlobFile, String absentBranch) throws IOException {
-            Blob presentBlobObj = Utils.readObject(presentBlobFile, Blob.class);
-
-            String CWD = System.getProperty("user.dir");
-            File conflictFile = new File(CWD, presentBlobObj.getFileName());
+        if (!Head.advance(state.getBranchName(), state.getOriginalHead(), onto,
+                "rebase: finished onto " + state.getOnto())) {
+            Main.exitWithError(BRANCH_MOVED);
+        }
+        updateWorkingTree(state.getWorkingSnapshot(), onto.getSnapshot());
+        stagingArea = new Staging();
+        stagingArea.save();
+        RebaseState.clear();
+    }
 
-            String presentContent = new String(presentBlobObj.getFileContent(),
-                    StandardCharsets.UTF_8);
+    /**
+     * Print the files of a merge resolved with a recorded resolution.
+     * @param result the result of a merge
+     */
+    private static void printReusedResolutions(MergeEngine.MergeResult result) {
+        for (String fileName : result.getReusedResolutions()) {
+            System.out.println("Resolved '" + fileName + "' using previous resolution.");
+        }
+    }
 
-            if (absentBranch.equals("curr")) {
-                Utils.writeContents(conflictFile,
-                        "<<<<<<< HEAD\n",
-                        "=======\n",
-                        presentContent,
-                        ">>>>>>>",
-                        System.lineSeparator());
+    /**
+     * Stop a rebase on the conflicts of RESULT: point HEAD at ONTO, stage
+     * the merged snapshot and write it to the working directory.
+     */
+    private void stopRebase(RebaseState state, Commit onto,
+                            MergeEngine.MergeResult result) {
+        if (!Head.moveGlobalHEAD(state.getBranchName(), state.getHead(), onto,
+                "rebase: stopped on conflicts")) {
+            Main.exitWithError(BRANCH_MOVED);
+        }
+        state.setHead(onto.getSHA());
+        stagingArea = new Staging();
+        for (TreeDiff.Change change : TreeDiff.compare(onto.getSnapshot(),
+                result.getSnapshot())) {
+            if (change.getNewId() != null) {
+                stagingArea.add(change.getPath(), change.getNewId());
             } else {
-                Utils.writeContents(conflictFile,
-                        "<<<<<<< HEAD\n" +
-                                presentContent +
-                                "=======\n" +
-                                ">>>>>>>" +
-                                System.lineSeparator());
+                stagingArea.unstage(change.getPath());
             }
-
-            Blob conflictFileBlob = new Blob(presentBlobObj.getFileName());
-            conflictFileBlob.save();
-            stagingArea.add(presentBlobObj.getFileName(), conflictFileBlob.getBlobSHA1());
-            stagingArea.save();
         }
+        stagingArea.save();
+        updateWorkingTree(state.getWorkingSnapshot(), result.getSnapshot());
+        state.setWorkingSnapshot(result.getSnapshot());
+        List<String> conflicts = new ArrayList<>();
+        result.getConflicts().forEach(conflict -> conflicts.add(conflict.getPath()));
+        state.setConflicts(conflicts);
+        state.save();
+        Rerere.recordConflicts(result.getConflicts());
+        Main.exitWithError("Encountered a merge conflict. Resolve it, add the files "
+                + "and run rebase --continue, or run rebase --abort.");
+    }
 
-        public void commitMerge(String branchName, String originalBranchName) throws IOException {
-            String commitMessage = "Merged " + branchName + " into " + originalBranchName + ". ";
-            String firstParentSHA1 = Head.getBranchHEAD(originalBranchName).getSHA();
-            String secondParentSHA1 = Head.getBranchHEAD(branchName).getSHA();
-
-            Commit mergeCommit = new Commit(commitMessage, firstParentSHA1, secondParentSHA1,
-                    false, stagingArea.getFilesStagedForAddition(),
-                    stagingArea.getFilesStagedForRemoval());
-
-            mergeCommit.saveMergeCommit();
+    /**
+     * Remember another repository on a local path, or served over HTTP
+     * by http-serve, as a remote.
+     * @param args the name of the remote and the path of its .gitlet
+     *             directory or its URL
+     */
+    public void addRemote(String[] args) {
+        Main.validateNumArgs(args);
+        if (Remote.load(args[1]) != null) {
+            Main.exitWithError("A remote with that name already exists.");
+        }
+        Remote.add(args[1], args[2]);
+    }
 
-            head.setBranchHEAD(originalBranchName,mergeCommit);
-            head.setGlobalHEAD(originalBranchName, mergeCommit);
+    /**
+     * Forget a remote.
+     * @param args the name of the remote
+     */
+    public void rmRemote(String[] args) {
+        Main.validateNumArgs(args);
+        if (Remote.load(args[1]) == null) {
+            Main.exitWithError("A remote with that name does not exist.");
+        }
+        Remote.remove(args[1]);
+    }
 
-            stagingArea = new Staging();
-            stagingArea.save();
+    /**
+     * Copy the new commits and blobs of a branch of a remote into this
+     * repository, and point the branch [remote name]/[branch name] at
+     * its head. Only the objects this repository does not have are
+     * sent, as one pack.
+     * @param args the name of the remote and of its branch
+     */
+    public void fetch(String[] args) {
+        Main.validateNumArgs(args);
+        Remote remote = loadRemote(args[1]);
+        if (!remote.hasBranch(args[2])) {
+            Main.exitWithError("That remote does not have that branch.");
         }
+        remote.fetch(args[2]);
+    }
 
-        public Commit latestCommonAncestor(Commit currHead, Commit branchHead) {
-            HashSet<String> branchPath = new HashSet<>();
-            buildBranchHashSet(branchPath, branchHead);
+    /**
+     * Send the commits of the current branch that a branch of a remote
+     * does not have yet, and point that branch at the current head. The
+     * head of the remote branch must be in the history of the current
+     * branch.
+     * @param args the name of the remote and of its branch
+     */
+    public void push(String[] args) {
+        Main.validateNumArgs(args);
+        Remote remote = loadRemote(args[1]);
+        if (remote.isHttp()) {
+            Main.exitWithError("Cannot push to a remote served over HTTP.");
+        }
+        Commit currHEAD = Head.getGlobalHEAD();
+        String remoteHead = null;
+        if (remote.getStore().hasBranch(args[2])) {
+            remoteHead = remote.getStore().branchHead(args[2]).getSHA();
+            if (!isAncestor(remoteHead, currHEAD)) {
+                Main.exitWithError("Please pull down remote changes before pushing.");
+            }
+        }
+        if (!remote.push(args[2], remoteHead, currHEAD)) {
+            Main.exitWithError(BRANCH_MOVED);
+        }
+    }
 
-            HashMap<Commit, Integer> ancestors = new HashMap<>();
+    /**
+     * Fetch a branch of a remote and merge it into the current branch.
+     * @param args the name of the remote and of its branch
+     */
+    public void pull(String[] args) throws IOException {
+        fetch(args);
+        String branchName = args[1] + "/" + args[2];
+        merge.failureCases(branchName);
+        merge.merge(branchName);
+    }
 
-            getAncestors(ancestors, branchPath, currHead, 0);
-            Commit LCA = null;
-            Integer minDepth = -1;
+    /**
+     * Return the remote NAME whose repository exists, or exit.
+     */
+    private Remote loadRemote(String name) {
+        Remote remote = Remote.load(name);
+        if (remote == null || !remote.exists()) {
+            Main.exitWithError("Remote directory not found.");
+        }
+        return remote;
+    }
 
-            for (Map.Entry<Commit, Integer> entry : ancestors.entrySet()) {
-                Commit node = entry.getKey();
-                Integer depth = entry.getValue();
-                if (minDepth < 0) {
-                    minDepth = depth;
-                    LCA = node;
-                } else if (depth < minDepth) {
-                    LCA = node;
-                    minDepth = depth;
-                }
+    /**
+     * Return true if the commit ANCESTOR is COMMIT or one of its
+     * ancestors in this repository.
+     */
+    private static boolean isAncestor(String ancestor, Commit commit) {
+        if (!ObjectStore.local().hasCommit(ancestor)) {
+            return false;
+        }
+        Set<String> seen = new HashSet<>();
+        Deque<Commit> queue = new ArrayDeque<>();
+        queue.add(commit);
+        while (!queue.isEmpty()) {
+            Commit next = queue.poll();
+            if (next.getSHA().equals(ancestor)) {
+                return true;
+            }
+            if (next.getFirstParentSHA1().equals(INIT_PARENT_SHA1) || !seen.add(next.getSHA())) {
+                continue;
+            }
+            queue.add(next.getParent());
+            if (next.getSecondParentSHA1() != null) {
+                queue.add(next.getParent2());
             }
-
-            return LCA;
         }
+        return false;
+    }
 
-        public void getAncestors(HashMap<Commit, Integer> ancestors,
-                                 HashSet<String> branchPath,
-                                 Commit currHead,
-                                 Integer depth) {
-            if (currHead.getFirstParentSHA1().equals(INIT_PARENT_SHA1)) {
-                return;
-            }
-            if (branchPath.contains(currHead.getSHA())) {
-                ancestors.put(currHead, depth);
+    /**
+     * Create a copy of the repository in the directory SRC in the
+     * directory DST, with SRC as its remote "origin", its branches as
+     * the branches origin/[branch name], and the branch checked out in
+     * SRC checked out. Objects never change once written, so they are
+     * hard-linked when both directories are on the same file system,
+     * and copied in parallel otherwise.
+     *
+     * With --depth N, only the last N commits of the checked-out branch
+     * and their blobs are copied, and the commits whose parents are
+     * left out are recorded as shallow. With --filter=blob:none, only
+     * the blobs of the checked-out commit are copied, and SRC is
+     * recorded as the promisor the other blobs are fetched from when
+     * they are needed.
+     * @param args [--depth N] [--filter=blob:none], the source and
+     *             destination directories
+     */
+    public void clone(String[] args) throws IOException {
+        Main.validateNumArgs(args);
+        int depth = 0;
+        boolean blobless = false;
+        for (int i = 1; i < args.length - 2; i++) {
+            if (args[i].equals("--depth") && i + 1 < args.length - 2
+                    && args[i + 1].matches("[1-9][0-9]{0,8}")) {
+                i += 1;
+                depth = Integer.parseInt(args[i]);
+            } else if (args[i].equals("--filter=blob:none")) {
+                blobless = true;
             } else {
-                if (currHead.getFirstParentSHA1() != null) {
-                    getAncestors(ancestors, branchPath, currHead.getParent(), depth + 1);
-                }
-                if (currHead.getSecondParentSHA1() != null) {
-                    getAncestors(ancestors, branchPath, currHead.getParent2(), depth + 1);
-                }
+                Main.exitWithError("Incorrect operands.");
             }
-
+        }
+        ObjectStore source = new ObjectStore(Utils.join(args[args.length - 2], ".gitlet"));
+        if (!source.exists()) {
+            Main.exitWithError("Source repository not found.");
+        }
+        File dst = new File(args[args.length - 1]);
+        String[] existing = dst.list();
+        if (dst.exists() && (existing == null || existing.length > 0)) {
+            Main.exitWithError("Destination path already exists "
+                    + "and is not an empty directory.");
+        }
+        ObjectStore target = new ObjectStore(Utils.join(dst, ".gitlet"));
+        target.create();
+        String branchName = source.currentBranchName();
+        Commit head = source.branchHead(branchName);
+        String sourcePath = source.getDir().getAbsoluteFile().toPath().normalize().toString();
+
+        Collection<String> commits = listObjects(Utils.join(source.getDir(), "objects", "commits"));
+        if (depth > 0) {
+            commits = lastCommits(source, head.getSHA(), depth);
+            commits.add(SENTINEL_COMMIT_ID);
+            commits.add(new Commit("initial commit", SENTINEL_COMMIT_ID, true,
+                    new HashMap<>()).getSHA());
+            Shallow.write(target.getDir(), shallowCommits(source, commits));
+        }
+        linkOrCopyObjects(Utils.join(source.getDir(), "objects", "commits"),
+                Utils.join(target.getDir(), "objects", "commits"), commits);
+        copyBlobs(source, target, blobless ? head.getSnapshot().values()
+                : depth > 0 ? Pack.missingBlobs(source, commits, id -> false) : null);
+        if (blobless) {
+            Promisor.write(target.getDir(), sourcePath);
         }
 
-        public void buildBranchHashSet(HashSet<String> branchSet, Commit branchHead) {
-            if (branchHead.getFirstParentSHA1().equals(INIT_PARENT_SHA1)) {
-                return;
+        Utils.writeObject(Utils.join(target.getDir(), "HEAD"), new Branch(branchName, head));
+        for (String name : depth > 0 ? List.of(branchName) : source.branchNames()) {
+            target.setBranchHead("origin/" + name, source.branchHead(name),
+                    "clone: from " + sourcePath);
+        }
+        target.setBranchHead(branchName, head, "clone: from " + sourcePath);
+        Utils.writeObject(Utils.join(target.getDir(), "staging", "index"), new Staging());
+        Remote.add(target.getDir(), "origin", sourcePath);
+
+        head.getSnapshot().entrySet().parallelStream().forEach(entry -> {
+            File file = Utils.join(dst, entry.getKey());
+            file.getParentFile().mkdirs();
+            try (InputStream in = target.openBlob(entry.getValue())) {
+                Files.copy(in, file.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            branchSet.add(branchHead.getSHA());
+        });
+    }
 
-            if (branchHead.getFirstParentSHA1() != null) {
-                buildBranchHashSet(branchSet, branchHead.getParent());
-            }
-            if (branchHead.getSecondParentSHA1() != null) {
-                buildBranchHashSet(branchSet, branchHead.getParent2());
+    /**
+     * Return the commits of SOURCE at most DEPTH commits away from the
+     * commit TIP, counting TIP as one.
+     */
+    private static Set<String> lastCommits(ObjectStore source, String tip, int depth) {
+        Set<String> commits = new HashSet<>();
+        List<String> level = List.of(tip);
+        for (int i = 0; i < depth && !level.isEmpty(); i++) {
+            List<String> next = new ArrayList<>();
+            for (String sha1 : level) {
+                if (sha1 == null || sha1.equals(INIT_PARENT_SHA1) || !commits.add(sha1)) {
+                    continue;
+                }
+                Commit commit = source.loadCommit(sha1);
+                next.add(commit.getFirstParentSHA1());
+                next.add(commit.getSecondParentSHA1());
             }
+            level = next;
         }
+        return commits;
+    }
 
-
-        // edge cases:
-        // 1. If the split point is the same commit as the given branch, then we
-        // do nothing; the merge is complete, and the operation ends with the message
-        // Given branch is an ancestor of the current branch.
-        public boolean branchHeadIsSP(Commit SP, Commit branchHead) {
-            return SP.getSHA().equals(branchHead.getSHA());
+    /**
+     * Return the commits of COMMITS that have a parent in SOURCE that
+     * is not in COMMITS.
+     */
+    private static List<String> shallowCommits(ObjectStore source, Collection<String> commits) {
+        List<String> shallow = new ArrayList<>();
+        for (String sha1 : commits) {
+            Commit commit = source.loadCommit(sha1);
+            for (String parent : new String[] {commit.getFirstParentSHA1(),
+                    commit.getSecondParentSHA1()}) {
+                if (parent != null && !parent.equals(INIT_PARENT_SHA1)
+                        && !commits.contains(parent)) {
+                    shallow.add(sha1);
+                    break;
+                }
+            }
         }
+        return shallow;
+    }
 
-        // 2. If the split point is the current branch, then the effect is to check
-        // out the given branch, and the operation ends after printing the message
-        // Current branch fast-forwarded.
-        public boolean currHeadIsSP(Commit SP) {
-            return Head.getGlobalHEAD().getSHA().equals(SP.getSHA());
+    /**
+     * Hard-link or copy BLOBS from SOURCE into TARGET, with the chunk
+     * lists and chunks of the chunked ones, or every blob if BLOBS is
+     * null.
+     */
+    private static void copyBlobs(ObjectStore source, ObjectStore target,
+                                  Collection<String> blobs) {
+        File objects = Utils.join(source.getDir(), "objects");
+        File targetObjects = Utils.join(target.getDir(), "objects");
+        List<String> plain = new ArrayList<>();
+        List<String> manifests = new ArrayList<>();
+        Set<String> chunks = new HashSet<>();
+        if (blobs == null) {
+            plain = listObjects(Utils.join(objects, "blobs"));
+            manifests = listObjects(Utils.join(objects, "manifests"));
+            chunks.addAll(listObjects(Utils.join(objects, "chunks")));
+        } else {
+            for (String blobSHA1 : new HashSet<>(blobs)) {
+                if (source.manifestFile(blobSHA1).isFile()) {
+                    manifests.add(blobSHA1);
+                    chunks.addAll(source.chunkIds(blobSHA1));
+                } else {
+                    plain.add(blobSHA1);
+                }
+            }
         }
+        linkOrCopyObjects(Utils.join(objects, "chunks"),
+                Utils.join(targetObjects, "chunks"), chunks);
+        linkOrCopyObjects(Utils.join(objects, "manifests"),
+                Utils.join(targetObjects, "manifests"), manifests);
+        linkOrCopyObjects(Utils.join(objects, "blobs"),
+                Utils.join(targetObjects, "blobs"), plain);
+    }
 
+    /**
+     * Return the names of the object files in the directory DIR,
+     * without temporary files.
+     */
+    private static List<String> listObjects(File dir) {
+        String[] names = dir.list((d, name) -> name.length() == Utils.UID_LENGTH);
+        return names == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(names));
+    }
 
-        public void exitWithMessage(String message) {
-            System.out.println(message);
-            System.exit(0);
-        }
-
-        //failure case
-        //1. stagingArea is present
-        //2. given branch name does not exit
-        //3. attempting to merge the branch it self
-        //4. untracked files in the way
-        public void failureCases(String branchName) {
-            if (stagingArea.load().hasUncommitedChanges()) {
-                exitWithMessage("You have uncommitted changes.");
+    /**
+     * Hard-link the object files NAMES of the directory FROM into the
+     * directory TO, in parallel, falling back to copying them once a
+     * link cannot be made.
+     */
+    private static void linkOrCopyObjects(File from, File to, Collection<String> names) {
+        to.mkdirs();
+        AtomicBoolean link = new AtomicBoolean(true);
+        names.parallelStream().forEach(name -> {
+            Path source = Utils.join(from, name).toPath();
+            Path target = Utils.join(to, name).toPath();
+            try {
+                if (link.get()) {
+                    try {
+                        Files.createLink(target, source);
+                        return;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        link.set(false);
+                    }
+                }
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        });
+    }
 
-            if (!Branch.hasBranch(branchName)) {
-                exitWithMessage("A branch with that name does not exist.");
+    /**
+     * Write branches with their history to a single bundle file, or
+     * store the objects of a bundle file in this repository and point
+     * the branches bundle/[branch name] at its branches. Arguments of
+     * create starting with '^' name commits the receiving repository
+     * already has; the bundle then only holds what came after them.
+     * @param args create, the bundle file, branches and ^bases, or
+     *             unbundle and the bundle file
+     */
+    public void bundle(String[] args) throws IOException {
+        Main.validateNumArgs(args);
+        File file = new File(args[2]);
+        if (args[1].equals("create")) {
+            Map<String, Commit> refs = new LinkedHashMap<>();
+            List<Commit> bases = new ArrayList<>();
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].startsWith("^")) {
+                    bases.add(findBranchOrCommit(args[i].substring(1)));
+                } else if (Branch.hasBranch(args[i])) {
+                    refs.put(args[i], Head.getBranchHEAD(args[i]));
+                } else {
+                    Main.exitWithError("A branch with that name does not exist.");
+                }
             }
-
-            if (branchName.equals(currentBranchName())) {
-                exitWithMessage("Cannot merge a branch with itself.");
+            if (refs.isEmpty()) {
+                Main.exitWithError("Refusing to create an empty bundle.");
             }
+            Bundle.create(file, refs, bases);
+            return;
+        }
 
-            Commit givenBranchHead = Head.getBranchHEAD(branchName);
-
-            if (hasUntrackedFilesForCheckoutBranch(givenBranchHead)) {
-                exitWithMessage("There is an untracked file in the way; delete it, " +
-                        "or add and commit it first.");
+        if (!file.isFile()) {
+            Main.exitWithError("Bundle not found.");
+        }
+        List<String> missing = null;
+        try {
+            missing = Bundle.missingPrerequisites(file);
+        } catch (IOException e) {
+            Main.exitWithError("Not a bundle file.");
+        }
+        if (!missing.isEmpty()) {
+            System.out.println("Repository lacks these prerequisite commits:");
+            missing.forEach(System.out::println);
+            return;
+        }
+        Bundle.Header header = null;
+        try {
+            header = Bundle.unbundle(file);
+        } catch (IOException e) {
+            Main.exitWithError("Not a bundle file.");
+        }
+        ObjectStore local = ObjectStore.local();
+        for (String sha1 : header.getRefs().values()) {
+            if (!local.hasCommit(sha1)) {
+                Main.exitWithError("Bundle is missing commit " + sha1 + ".");
             }
         }
+        header.getRefs().forEach((name, sha1) -> {
+            local.setBranchHead("bundle/" + name, local.loadCommit(sha1),
+                    "unbundle: " + file);
+            System.out.println(sha1 + " bundle/" + name);
+        });
     }
 
     /**
-     * TBD.
+     * Add a working tree for a branch, sharing the objects and branches
+     * of this repository, or list the working trees.
+     * @param args add [path] [branch name], or list
+     */
+    public void worktree(String[] args) throws IOException {
+        Main.validateNumArgs(args);
+        if (args[1].equals("add")) {
+            Worktree.add(args[2], args[3]);
+        } else {
+            Worktree.list();
+        }
+    }
+
+    /**
+     * Move the loose branch files into the packed-refs file.
+     * @param args no operands
      */
-    public void rebase(String branchName) {
+    public void packRefs(String[] args) {
+        Main.validateNumArgs(args);
+        ObjectStore.local().packRefs();
+    }
 
+    /**
+     * Print the reflog of HEAD or of a branch, newest entry first, or
+     * drop old entries from all reflogs.
+     * @param args [ref], or expire [days]
+     */
+    public void reflog(String[] args) {
+        Main.validateNumArgs(args);
+        ObjectStore local = ObjectStore.local();
+        if (args.length > 1 && args[1].equals("expire")) {
+            int days = args.length == 3
+                    ? Integer.parseInt(args[2]) : Reflog.DEFAULT_EXPIRE_DAYS;
+            long cutoff = System.currentTimeMillis() - days * 24L * 60 * 60 * 1000;
+            for (File head : Worktree.heads(Main.GITLET_FOLDER).keySet()) {
+                Reflog.expire(Reflog.headLog(head), head, cutoff);
+            }
+            for (String name : local.branchNames()) {
+                Reflog.expire(local.branchLog(name), local.branchFile(name), cutoff);
+                local.deleteEmptyDirs(name);
+            }
+            return;
+        }
+        String ref = args.length == 2 ? args[1] : "HEAD";
+        File log = Reflog.headLog(Main.HEAD);
+        if (!ref.equals("HEAD")) {
+            if (!local.hasBranch(ref)) {
+                Main.exitWithError("A branch with that name does not exist.");
+            }
+            log = local.branchLog(ref);
+        }
+        int[] index = {0};
+        Reflog.readBackwards(log, entry -> {
+            System.out.println(entry.getNewSHA1().substring(0, 7) + " " + ref
+                    + "@{" + index[0]++ + "}: " + entry.getReason());
+            return true;
+        });
     }
 }
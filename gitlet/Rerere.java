@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rerere ("reuse recorded resolution") remembers how conflicts were
+ * resolved and resolves the same conflicts the same way when they
+ * appear again. A conflicted file is identified by the hash of its
+ * conflict regions, with the two sides of each region put in a fixed
+ * order so that merging A into B and B into A give the same id. The
+ * conflicted content is recorded as the preimage when a merge stops,
+ * and the content the file has at the next commit as the postimage.
+ * A later conflict with the same id is resolved by merging the change
+ * from the preimage to the postimage into it.
+ *
+ * @author Chloe Lin
+ */
+public class Rerere {
+
+    /**
+     * The most resolutions kept; the least recently used are evicted.
+     */
+    static final int MAX_ENTRIES = 500;
+    /**
+     * Resolutions not used for this long are evicted.
+     */
+    static final long EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(60);
+    /**
+     * Name of the conflicted content in a cache entry.
+     */
+    private static final String PREIMAGE = "preimage";
+    /**
+     * Name of the resolved content in a cache entry.
+     */
+    private static final String POSTIMAGE = "postimage";
+
+    /**
+     * A conflicted content with the sides of its regions in a fixed
+     * order, and the id of its conflicts.
+     */
+    private static class Normalized {
+        /** The content with normalized conflict regions. */
+        private final byte[] content;
+        /** The hash of the conflict regions. */
+        private final String id;
+
+        Normalized(byte[] content, String id) {
+            this.content = content;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Return CONTENT with its conflicts resolved the way they were
+     * resolved before, or null if they were never resolved or the
+     * recorded resolution does not apply cleanly.
+     * @param content a file with conflict markers
+     */
+    public static byte[] resolve(byte[] content) {
+        Normalized conflict = normalize(content);
+        if (conflict == null) {
+            return null;
+        }
+        File entry = Utils.join(Main.RR_CACHE_FOLDER, conflict.id);
+        File postimage = Utils.join(entry, POSTIMAGE);
+        if (!postimage.exists()) {
+            return null;
+        }
+        ContentMerge.Result result = ContentMerge.merge(
+                Utils.readContents(Utils.join(entry, PREIMAGE)),
+                conflict.content, Utils.readContents(postimage));
+        if (result.hasConflicts()) {
+            return null;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        return result.getContent();
+    }
+
+    /**
+     * Record the preimages of the content conflicts of a merge and mark
+     * their files as waiting for a resolution at the next commit.
+     * @param conflicts the conflicts of the merge
+     */
+    public static void recordConflicts(List<MergeEngine.Conflict> conflicts) {
+        TreeMap<String, String> pending = loadPending();
+        for (MergeEngine.Conflict conflict : conflicts) {
+            Blob blob = Blob.load(conflict.getPath(), conflict.getResult());
+            if (!conflict.getType().equals("content") || MergeEngine.isTooLarge(blob)) {
+                continue;
+            }
+            Normalized normalized = normalize(blob.getFileContent());
+            if (normalized == null) {
+                continue;
+            }
+            File entry = Utils.join(Main.RR_CACHE_FOLDER, normalized.id);
+            entry.mkdirs();
+            File preimage = Utils.join(entry, PREIMAGE);
+            if (!preimage.exists()) {
+                Utils.writeContents(preimage, normalized.content);
+            }
+            pending.put(conflict.getPath(), normalized.id);
+        }
+        if (!pending.isEmpty()) {
+            Utils.writeObject(Main.MERGE_RR, pending);
+        }
+        evict();
+    }
+
+    /**
+     * Record the content that the files waiting for a resolution have
+     * in SNAPSHOT as their postimage, unless they still have conflict
+     * markers, and stop waiting for them.
+     * @param snapshot the file-blob mapping of a new commit
+     */
+    public static void recordResolutions(Map<String, String> snapshot) {
+        if (!Main.MERGE_RR.exists()) {
+            return;
+        }
+        loadPending().forEach((fileName, id) -> {
+            String blobSHA1 = snapshot.get(fileName);
+            File entry = Utils.join(Main.RR_CACHE_FOLDER, id);
+            if (blobSHA1 == null || !entry.isDirectory()) {
+                return;
+            }
+            byte[] content = Blob.load(fileName, blobSHA1).getFileContent();
+            if (!hasMarkers(content)) {
+                Utils.writeContents(Utils.join(entry, POSTIMAGE), content);
+            }
+        });
+        Main.MERGE_RR.delete();
+        evict();
+    }
+
+    /**
+     * Return the files waiting for a resolution, mapped to their
+     * conflict ids.
+     */
+    @SuppressWarnings("unchecked")
+    private static TreeMap<String, String> loadPending() {
+        if (!Main.MERGE_RR.exists()) {
+            return new TreeMap<>();
+        }
+        return Utils.readObject(Main.MERGE_RR, TreeMap.class);
+    }
+
+    /**
+     * Delete the entries not used for longer than EXPIRY_MILLIS, then
+     * the least recently used ones beyond MAX_ENTRIES.
+     */
+    private static void evict() {
+        File[] entries = Main.RR_CACHE_FOLDER.listFiles(File::isDirectory);
+        if (entries == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - EXPIRY_MILLIS;
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = 0; i < entries.length; i++) {
+            if (i >= MAX_ENTRIES || entries[i].lastModified() < oldest) {
+                File[] files = entries[i].listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                entries[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Return CONTENT with the two sides of each conflict region in
+     * byte order and the hash of the regions, or null if it has no
+     * complete conflict region.
+     */
+    private static Normalized normalize(byte[] content) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+        ByteArrayOutputStream ours = new ByteArrayOutputStream();
+        ByteArrayOutputStream theirs = new ByteArrayOutputStream();
+        ByteArrayOutputStream side = null;
+        int regions = 0;
+        int start = 0;
+        while (start < content.length) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') {
+                end += 1;
+            }
+            end = Math.min(end + 1, content.length);
+            if (side == null && isLine(content, start, end, ContentMerge.OURS_MARKER)) {
+                ours.reset();
+                theirs.reset();
+                side = ours;
+            } else if (side == ours
+                    && isLine(content, start, end, ContentMerge.SEPARATOR_MARKER)) {
+                side = theirs;
+            } else if (side == theirs
+                    && isLine(content, start, end, ContentMerge.THEIRS_MARKER)) {
+                byte[] a = ours.toByteArray();
+                byte[] b = theirs.toByteArray();
+                if (Arrays.compare(a, b) > 0) {
+                    byte[] swap = a;
+                    a = b;
+                    b = swap;
+                }
+                out.writeBytes(ContentMerge.OURS_MARKER);
+                out.writeBytes(a);
+                out.writeBytes(ContentMerge.SEPARATOR_MARKER);
+                out.writeBytes(b);
+                out.writeBytes(ContentMerge.THEIRS_MARKER);
+                md.update(a);
+                md.update((byte) 0);
+                md.update(b);
+                md.update((byte) 0);
+                regions += 1;
+                side = null;
+            } else if (side != null) {
+                side.write(content, start, end - start);
+            } else {
+                out.write(content, start, end - start);
+            }
+            start = end;
+        }
+        if (regions == 0 || side != null) {
+            return null;
+        }
+        return new Normalized(out.toByteArray(), Utils.toHex(md.digest()));
+    }
+
+    /**
+     * Return true if CONTENT has any conflict marker line.
+     */
+    private static boolean hasMarkers(byte[] content) {
+        int start = 0;
+        while (start < content.length) {
+            int end = start;
+            while (end < content.length && content[end] != '\n') {
+                end += 1;
+            }
+            end = Math.min(end + 1, content.length);
+            if (isLine(content, start, end, ContentMerge.OURS_MARKER)
+                    || isLine(content, start, end, ContentMerge.THEIRS_MARKER)) {
+                return true;
+            }
+            start = end;
+        }
+        return false;
+    }
+
+    /**
+     * Return true if bytes [start, end) of CONTENT are the line MARKER.
+     */
+    private static boolean isLine(byte[] content, int start, int end, byte[] marker) {
+        return Arrays.equals(content, start, end, marker, 0, marker.length);
+    }
+}
@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Shallow lists the commits of a shallow clone whose parents were not
+ * copied. Such a commit is treated as if its only parent were the
+ * sentinel commit, like the initial commit, so that every walk over the
+ * history stops at it instead of loading a missing commit.
+ *
+ * @author Chloe Lin
+ */
+public class Shallow {
+
+    /**
+     * The commits whose parents are missing, loaded once.
+     */
+    private static Set<String> boundary;
+
+    /**
+     * Return true if the parents of the commit with the given SHA1 are
+     * not in the repository.
+     * @param sha1 the SHA1 of a commit
+     */
+    public static boolean isShallow(String sha1) {
+        if (boundary == null) {
+            boundary = new HashSet<>();
+            if (Main.SHALLOW.isFile()) {
+                for (String line : Utils.readContentsAsString(Main.SHALLOW).split("\n")) {
+                    if (!line.isEmpty()) {
+                        boundary.add(line);
+                    }
+                }
+            }
+        }
+        return boundary.contains(sha1);
+    }
+
+    /**
+     * Record COMMITS as the commits of the repository at GITLETDIR whose
+     * parents are missing.
+     * @param gitletDir the .gitlet directory of the repository
+     * @param commits the SHA1s of the commits
+     */
+    static void write(File gitletDir, Collection<String> commits) {
+        StringBuilder content = new StringBuilder();
+        commits.forEach(sha1 -> content.append(sha1).append('\n'));
+        Utils.writeContents(Utils.join(gitletDir, Main.SHALLOW.getName()), content.toString());
+    }
+}
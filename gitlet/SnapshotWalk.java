@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * A SnapshotWalk visits the file names of several snapshots together,
+ * in sorted order, as a merge-join. Each snapshot is sorted once, after
+ * which every file name is visited exactly once with the blob SHA1 it
+ * has in each snapshot, or null where it is absent.
+ *
+ * @author Chloe Lin
+ */
+public class SnapshotWalk {
+
+    /**
+     * The sorted file names of each snapshot.
+     */
+    private final String[][] names;
+    /**
+     * The blob SHA1s of each snapshot, in the order of names.
+     */
+    private final String[][] values;
+    /**
+     * The position of the walk in each snapshot.
+     */
+    private final int[] positions;
+    /**
+     * The blob SHA1s of the current file name in each snapshot.
+     */
+    private final String[] ids;
+    /**
+     * The current file name.
+     */
+    private String path;
+
+    /**
+     * Start a walk over SNAPSHOTS.
+     * @param snapshots snapshots mapping file names to blob SHA1s
+     */
+    @SafeVarargs
+    public SnapshotWalk(Map<String, String>... snapshots) {
+        this.names = new String[snapshots.length][];
+        this.values = new String[snapshots.length][];
+        this.positions = new int[snapshots.length];
+        this.ids = new String[snapshots.length];
+        for (int i = 0; i < snapshots.length; i++) {
+            List<Map.Entry<String, String>> entries = new ArrayList<>(snapshots[i].entrySet());
+            if (!isSortedByName(snapshots[i])) {
+                entries.sort(Map.Entry.comparingByKey());
+            }
+            names[i] = new String[entries.size()];
+            values[i] = new String[entries.size()];
+            for (int j = 0; j < entries.size(); j++) {
+                names[i][j] = entries.get(j).getKey();
+                values[i][j] = entries.get(j).getValue();
+            }
+        }
+    }
+
+    /**
+     * Return true if SNAPSHOT already iterates in file name order.
+     * @param snapshot a snapshot
+     */
+    private static boolean isSortedByName(Map<String, String> snapshot) {
+        return snapshot instanceof SortedMap
+                && ((SortedMap<String, String>) snapshot).comparator() == null;
+    }
+
+    /**
+     * Move to the next file name. Return false when all snapshots are
+     * exhausted.
+     */
+    public boolean next() {
+        path = null;
+        for (int i = 0; i < names.length; i++) {
+            if (positions[i] < names[i].length) {
+                String name = names[i][positions[i]];
+                if (path == null || name.compareTo(path) < 0) {
+                    path = name;
+                }
+            }
+        }
+        if (path == null) {
+            return false;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (positions[i] < names[i].length && names[i][positions[i]].equals(path)) {
+                ids[i] = values[i][positions[i]];
+                positions[i] += 1;
+            } else {
+                ids[i] = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the current file name.
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * Return the blob SHA1 of the current file name in the I-th
+     * snapshot, or null if it is not there.
+     * @param i index of the snapshot
+     */
+    public String id(int i) {
+        return ids[i];
+    }
+}
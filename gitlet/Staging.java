@@ -66,20 +66,26 @@ public class Staging implements Serializable {
 
     public Blob getBlobOfFile(String fileName) {
         String blobSHA1 = this.stagedForAddition.get(fileName);
-        File blobFile = Utils.join(Main.BLOBS_FOLDER, blobSHA1);
-        Blob blob = Blob.load(blobFile);
-        return blob;
+        return Blob.load(fileName, blobSHA1);
     }
 
     public void save() {
         Staging stage = new Staging(this.stagedForAddition, this.stagedForRemoval);
         File index = Utils.join(Main.STAGING_FOLDER, "index");
-        Utils.writeObject(index, stage);
+        LockFile lock = LockFile.acquire(index);
+        lock.write(Utils.serialize(stage));
+        lock.commit();
     }
 
+    /**
+     * Return the staging area saved in the index, through the object
+     * cache. The cached staging area is copied, since callers change it.
+     */
     public Staging load() {
         File index = Utils.join(Main.STAGING_FOLDER, "index");
-        return Utils.readObject(index, Staging.class);
+        Staging stage = ObjectCache.local().tree(index, Staging.class);
+        return new Staging(new TreeMap<>(stage.stagedForAddition),
+                new HashSet<>(stage.stagedForRemoval));
     }
 
     public Map<String, String> getFilesStagedForAddition() {
@@ -25,9 +25,8 @@ public class Status {
          * To-do: handle the situation when having multiple branches.
          * Do this after finishing the method to create branch.
          */
-        List<String> branchNames = Utils.plainFilenamesIn(Main.HEADS_REFS_FOLDER);
-        Branch currBranch = Utils
-                .readObject((Utils.join(Main.GITLET_FOLDER, "HEAD")), Branch.class);
+        List<String> branchNames = ObjectStore.local().branchNames();
+        Branch currBranch = Branch.load(Main.HEAD);
 
         branchNames.forEach((name) -> {
             if (currBranch.getName().equals(name)) {
@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A TreeDiff lists the files added, modified and deleted between two
+ * snapshots, with a merge-join over the snapshots sorted by file name,
+ * and optionally counts the lines inserted and deleted in each of them.
+ * Only the files whose blob SHA1s differ are ever read. Deleted and
+ * added files can be paired into renames and copies by RenameDetector.
+ *
+ * @author Chloe Lin
+ */
+public class TreeDiff {
+
+    /**
+     * A file that differs between the two snapshots.
+     */
+    public static class Change {
+        /** A, M, D, R (renamed) or C (copied). */
+        private final char status;
+        /** The file name in the old snapshot, the source of a rename or copy. */
+        private final String oldPath;
+        /** The file name in the new snapshot. */
+        private final String path;
+        /** Blob SHA1 in the old snapshot, or null if added. */
+        private final String oldId;
+        /** Blob SHA1 in the new snapshot, or null if deleted. */
+        private final String newId;
+        /** Similarity in percent of a rename or copy. */
+        private final int score;
+        /** Lines inserted, or -1 if not counted or binary. */
+        private int insertions = -1;
+        /** Lines deleted, or -1 if not counted or binary. */
+        private int deletions = -1;
+
+        Change(char status, String path, String oldId, String newId) {
+            this(status, path, path, oldId, newId, 0);
+        }
+
+        Change(char status, String oldPath, String path, String oldId, String newId,
+               int score) {
+            this.status = status;
+            this.oldPath = oldPath;
+            this.path = path;
+            this.oldId = oldId;
+            this.newId = newId;
+            this.score = score;
+        }
+
+        public char getStatus() {
+            return status;
+        }
+
+        public String getOldPath() {
+            return oldPath;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public String getOldId() {
+            return oldId;
+        }
+
+        public String getNewId() {
+            return newId;
+        }
+
+        public int getInsertions() {
+            return insertions;
+        }
+
+        public int getDeletions() {
+            return deletions;
+        }
+
+        /** Return true if the lines of the change were counted. */
+        public boolean isCounted() {
+            return insertions >= 0;
+        }
+
+        /** Return the file name, or both names of a rename or copy. */
+        public String getDisplayPath() {
+            return oldPath.equals(path) ? path : oldPath + " => " + path;
+        }
+    }
+
+    /**
+     * Return the files that differ from OLDSNAPSHOT to NEWSNAPSHOT, in
+     * file name order.
+     * @param oldSnapshot the old file-blob mapping
+     * @param newSnapshot the new file-blob mapping
+     */
+    public static List<Change> compare(Map<String, String> oldSnapshot,
+                                       Map<String, String> newSnapshot) {
+        List<Change> changes = new ArrayList<>();
+        SnapshotWalk walk = new SnapshotWalk(oldSnapshot, newSnapshot);
+        while (walk.next()) {
+            String oldId = walk.id(0);
+            String newId = walk.id(1);
+            if (oldId == null) {
+                changes.add(new Change('A', walk.path(), null, newId));
+            } else if (newId == null) {
+                changes.add(new Change('D', walk.path(), oldId, null));
+            } else if (!oldId.equals(newId)) {
+                changes.add(new Change('M', walk.path(), oldId, newId));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Count the lines inserted and deleted by each change, in parallel.
+     * Added and deleted files are counted by streaming their blob, and
+     * modified text files with LineDiff.
+     * @param changes the changes to count
+     */
+    public static void countLines(List<Change> changes) {
+        List<String> blobIds = new ArrayList<>();
+        changes.forEach(change -> {
+            blobIds.add(change.oldId);
+            blobIds.add(change.newId);
+        });
+        Promisor.prefetch(blobIds);
+        changes.parallelStream().forEach(TreeDiff::countLines);
+    }
+
+    /**
+     * Count the lines inserted and deleted by CHANGE.
+     */
+    private static void countLines(Change change) {
+        if (change.oldId == null) {
+            change.insertions = streamLineCount(change.path, change.newId);
+            change.deletions = change.insertions < 0 ? -1 : 0;
+        } else if (change.newId == null) {
+            change.deletions = streamLineCount(change.oldPath, change.oldId);
+            change.insertions = change.deletions < 0 ? -1 : 0;
+        } else if (change.oldId.equals(change.newId)) {
+            change.insertions = 0;
+            change.deletions = 0;
+        } else {
+            byte[] oldContent = Blob.load(change.oldPath, change.oldId).getFileContent();
+            byte[] newContent = Blob.load(change.path, change.newId).getFileContent();
+            if (Diff.isBinary(oldContent) || Diff.isBinary(newContent)) {
+                return;
+            }
+            LineDiff.Lines[] lines = LineDiff.split(oldContent, newContent);
+            int insertions = 0;
+            int deletions = 0;
+            for (LineDiff.Edit edit : LineDiff.diff(lines[0], lines[1])) {
+                insertions += edit.getBEnd() - edit.getBStart();
+                deletions += edit.getAEnd() - edit.getAStart();
+            }
+            change.insertions = insertions;
+            change.deletions = deletions;
+        }
+    }
+
+    /**
+     * Return the number of lines of a blob, read as a stream, or -1 if
+     * it is binary.
+     */
+    private static int streamLineCount(String path, String blobSHA1) {
+        try (InputStream in = Blob.load(path, blobSHA1).openStream()) {
+            byte[] buffer = new byte[Utils.BUFFER_SIZE];
+            int lines = 0;
+            long read = 0;
+            int last = '\n';
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        lines += 1;
+                    } else if (buffer[i] == 0 && read + i < Diff.BINARY_CHECK_LENGTH) {
+                        return -1;
+                    }
+                }
+                read += n;
+                last = buffer[n - 1];
+            }
+            return last == '\n' ? lines : lines + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Print each change as its status and file name. Renames and copies
+     * are printed with their similarity and both file names.
+     * @param changes the changes to print
+     * @param out where they are printed
+     */
+    public static void printNameStatus(List<Change> changes, PrintStream out) {
+        for (Change change : changes) {
+            if (change.status == 'R' || change.status == 'C') {
+                out.println(change.status + String.format("%03d", change.score)
+                        + "\t" + change.oldPath + "\t" + change.path);
+            } else {
+                out.println(change.status + "\t" + change.path);
+            }
+        }
+    }
+
+    /**
+     * Print each change as its inserted and deleted line counts and
+     * file name, with "-" for binary files.
+     * @param changes the counted changes to print
+     * @param out where they are printed
+     */
+    public static void printNumStat(List<Change> changes, PrintStream out) {
+        changes.forEach(change -> out.println(
+                (change.isCounted() ? change.insertions + "\t" + change.deletions : "-\t-")
+                        + "\t" + change.getDisplayPath()));
+    }
+
+    /**
+     * Print each change with its number of changed lines, followed by a
+     * summary line.
+     * @param changes the counted changes to print
+     * @param out where they are printed
+     */
+    public static void printStat(List<Change> changes, PrintStream out) {
+        int width = 0;
+        for (Change change : changes) {
+            width = Math.max(width, change.getDisplayPath().length());
+        }
+        int insertions = 0;
+        int deletions = 0;
+        for (Change change : changes) {
+            String name = String.format("%-" + width + "s", change.getDisplayPath());
+            if (change.isCounted()) {
+                insertions += change.insertions;
+                deletions += change.deletions;
+                String bar = "+".repeat(Math.min(change.insertions, 40))
+                        + "-".repeat(Math.min(change.deletions, 40));
+                out.println(" " + name + " | " + (change.insertions + change.deletions)
+                        + (bar.isEmpty() ? "" : " " + bar));
+            } else {
+                out.println(" " + name + " | Bin");
+            }
+        }
+        out.println(" " + changes.size() + (changes.size() == 1 ? " file" : " files")
+                + " changed, " + insertions + " insertions(+), "
+                + deletions + " deletions(-)");
+    }
+}
@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A TreeMerge compares the snapshots of the split point, the current
+ * branch and the given branch in a single sorted pass, and classifies
+ * every file name once into the action a merge has to take for it.
+ *
+ * @author Chloe Lin
+ */
+public class TreeMerge {
+
+    /**
+     * What a merge does with a file.
+     */
+    public enum Kind {
+        /** Same in both branches, keep it as it is. */
+        UNCHANGED,
+        /** Only changed in the current branch, keep the current version. */
+        TAKE_OURS,
+        /** Only changed in the given branch, take the given version. */
+        TAKE_THEIRS,
+        /** Deleted in both branches. */
+        BOTH_DELETED,
+        /** Changed differently in both branches. */
+        CONFLICT
+    }
+
+    /**
+     * The action for one file. A null blob SHA1 means the file is
+     * absent in that snapshot.
+     */
+    public static class Action {
+        /** The file name. */
+        private final String path;
+        /** What the merge does with it. */
+        private final Kind kind;
+        /** Blob SHA1 at the split point. */
+        private final String base;
+        /** Blob SHA1 in the current branch. */
+        private final String ours;
+        /** Blob SHA1 in the given branch. */
+        private final String theirs;
+
+        Action(String path, Kind kind, String base, String ours, String theirs) {
+            this.path = path;
+            this.kind = kind;
+            this.base = base;
+            this.ours = ours;
+            this.theirs = theirs;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getBase() {
+            return base;
+        }
+
+        public String getOurs() {
+            return ours;
+        }
+
+        public String getTheirs() {
+            return theirs;
+        }
+
+        /**
+         * Return the blob SHA1 the file has after the merge, or null if
+         * it is deleted. Conflicts have no result blob yet.
+         */
+        public String getResult() {
+            switch (kind) {
+                case UNCHANGED:
+                case TAKE_OURS:
+                    return ours;
+                case TAKE_THEIRS:
+                    return theirs;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Classify every file of the three snapshots, in file name order.
+     * @param split snapshot of the split point
+     * @param curr snapshot of the current branch
+     * @param given snapshot of the given branch
+     */
+    public static List<Action> classify(Map<String, String> split,
+                                        Map<String, String> curr,
+                                        Map<String, String> given) {
+        List<Action> actions = new ArrayList<>();
+        SnapshotWalk walk = new SnapshotWalk(split, curr, given);
+        while (walk.next()) {
+            String base = walk.id(0);
+            String ours = walk.id(1);
+            String theirs = walk.id(2);
+            actions.add(new Action(walk.path(), classify(base, ours, theirs),
+                    base, ours, theirs));
+        }
+        return actions;
+    }
+
+    /**
+     * Classify every file of the three snapshots like classify, after
+     * following the files that one branch renamed: the split point and
+     * the other branch see such a file under its new name, so a change
+     * made to it under the old name is merged into the renamed file.
+     * Files renamed differently by both branches are not followed.
+     * @param split snapshot of the split point
+     * @param curr snapshot of the current branch
+     * @param given snapshot of the given branch
+     */
+    public static List<Action> classifyFollowingRenames(Map<String, String> split,
+                                                        Map<String, String> curr,
+                                                        Map<String, String> given) {
+        Map<String, String> oursRenames = RenameDetector.renames(split, curr);
+        Map<String, String> theirsRenames = RenameDetector.renames(split, given);
+        if (oursRenames.isEmpty() && theirsRenames.isEmpty()) {
+            return classify(split, curr, given);
+        }
+        Map<String, String> base = new TreeMap<>(split);
+        Map<String, String> ours = new TreeMap<>(curr);
+        Map<String, String> theirs = new TreeMap<>(given);
+        oursRenames.forEach((oldName, newName) -> {
+            String theirsName = theirsRenames.get(oldName);
+            if (theirsName != null) {
+                if (theirsName.equals(newName)) {
+                    move(base, oldName, newName);
+                }
+            } else if (!theirs.containsKey(newName)) {
+                move(base, oldName, newName);
+                move(theirs, oldName, newName);
+            }
+        });
+        theirsRenames.forEach((oldName, newName) -> {
+            if (!oursRenames.containsKey(oldName) && !ours.containsKey(newName)) {
+                move(base, oldName, newName);
+                move(ours, oldName, newName);
+            }
+        });
+        return classify(base, ours, theirs);
+    }
+
+    /**
+     * Move the file OLDNAME of SNAPSHOT, if it is there, to NEWNAME.
+     */
+    private static void move(Map<String, String> snapshot, String oldName, String newName) {
+        String blobSHA1 = snapshot.remove(oldName);
+        if (blobSHA1 != null) {
+            snapshot.put(newName, blobSHA1);
+        }
+    }
+
+    /**
+     * Classify one file from its blob SHA1s, any of which may be null.
+     * @param base blob at the split point
+     * @param ours blob in the current branch
+     * @param theirs blob in the given branch
+     */
+    static Kind classify(String base, String ours, String theirs) {
+        if (same(ours, theirs)) {
+            return ours == null ? Kind.BOTH_DELETED : Kind.UNCHANGED;
+        }
+        if (same(ours, base)) {
+            return Kind.TAKE_THEIRS;
+        }
+        if (same(theirs, base)) {
+            return Kind.TAKE_OURS;
+        }
+        return Kind.CONFLICT;
+    }
+
+    /**
+     * Return true if two blob SHA1s, either of which may be null, are equal.
+     */
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
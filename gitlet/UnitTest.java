@@ -20,6 +20,57 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Return N lines "PREFIX line I", as a file. */
+    private static byte[] numberedLines(String prefix, int n) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            content.append(prefix).append(" line ").append(i).append('\n');
+        }
+        return content.toString().getBytes();
+    }
+
+    /** Merging a large file rewritten on both sides gives one conflict
+     *  region, without a quadratic search. */
+    @Test(timeout = 10000)
+    public void mergeRewrittenLargeFileTest() {
+        int n = 100000;
+        ContentMerge.Result result = ContentMerge.merge(numberedLines("base", n),
+                numberedLines("ours", n), numberedLines("theirs", n));
+        assertEquals(1, result.getConflicts());
+    }
+
+    /** The diff of a large file whose lines were all moved turns the
+     *  old file into the new one, though the search gives up early. */
+    @Test(timeout = 10000)
+    public void diffReversedLargeFileTest() {
+        int n = 100000;
+        int[] a = new int[n];
+        int[] b = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+            b[i] = n - 1 - i;
+        }
+        int[] patched = new int[n];
+        int length = 0;
+        int next = 0;
+        for (LineDiff.Edit edit : LineDiff.diff(a, b)) {
+            for (int i = next; i < edit.getAStart(); i++) {
+                patched[length++] = a[i];
+            }
+            for (int j = edit.getBStart(); j < edit.getBEnd(); j++) {
+                patched[length++] = b[j];
+            }
+            next = edit.getAEnd();
+        }
+        for (int i = next; i < n; i++) {
+            patched[length++] = a[i];
+        }
+        assertEquals(n, length);
+        for (int i = 0; i < n; i++) {
+            assertEquals(b[i], patched[i]);
+        }
+    }
+
 }
 
 
@@ -1,16 +1,19 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -29,6 +32,9 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** The size of the buffer used when streaming file contents. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
@@ -43,11 +49,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -59,6 +61,41 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE, which is read as a
+     *  stream rather than all at once.  The result equals sha1 of the
+     *  byte array of its contents.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static String sha1(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns true if S is a complete SHA-1 UID in lower case, and so
+     *  safe to use as a file name. */
+    static boolean isSHA1(String s) {
+        return s != null && s.matches("[0-9a-f]{" + UID_LENGTH + "}");
+    }
+
+    /** Returns DIGEST as a hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -66,7 +103,7 @@ class Utils {
      *  and throws IllegalArgumentException unless the directory designated by
      *  FILE also contains a directory named .gitlet. */
     static boolean restrictedDelete(File file) {
-        if (!(new File(file.getParentFile(), ".gitlet")).isDirectory()) {
+        if (!(new File(file.getParentFile(), ".gitlet")).exists()) {
             throw new IllegalArgumentException("not .gitlet working directory");
         }
         if (!file.isDirectory()) {
@@ -153,6 +190,22 @@ class Utils {
         writeContents(file, serialize(obj));
     }
 
+    /** Write OBJ to a temporary file next to FILE and rename it over
+     *  FILE, so that FILE is replaced instead of changed in place. A file
+     *  hard-linked into another repository is then never changed. */
+    static void replaceObject(File file, Serializable obj) {
+        try {
+            File tmp = File.createTempFile(file.getName(), ".tmp",
+                                           file.getParentFile());
+            writeContents(tmp, serialize(obj));
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */
@@ -216,6 +269,20 @@ class Utils {
         }
     }
 
+    /** Return an object of type T read from BYTES, casting it to
+     *  EXPECTEDCLASS. Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Worktree is an extra working directory of a repository, with its
+ * own HEAD and staging area but the objects, branches and remotes of
+ * the main repository. Its .gitlet is a file holding the path of its
+ * directory under .gitlet/worktrees, so nothing is copied when it is
+ * added. A branch is checked out in at most one working tree: a
+ * checkout holds the lock file .gitlet/worktrees.lock while it looks at
+ * the HEADs of the other working trees and moves its own.
+ *
+ * @author Chloe Lin
+ */
+public class Worktree {
+
+    /**
+     * Return the directory holding the HEAD and staging area of the
+     * working tree whose .gitlet is DOTGITLET: DOTGITLET itself, or the
+     * directory it names if it is a file.
+     * @param dotGitlet the .gitlet of a working tree
+     */
+    static File resolve(File dotGitlet) {
+        if (!dotGitlet.isFile()) {
+            return dotGitlet;
+        }
+        return new File(Utils.readContentsAsString(dotGitlet).trim());
+    }
+
+    /**
+     * Return the .gitlet directory of the repository the working tree
+     * directory DIR belongs to.
+     * @param dir the directory returned by resolve
+     */
+    static File commonDir(File dir) {
+        File parent = dir.getParentFile();
+        if (parent != null && parent.getName().equals("worktrees")) {
+            return parent.getParentFile();
+        }
+        return dir;
+    }
+
+    /**
+     * Move the HEAD of the current working tree to the branch BRANCHNAME
+     * at COMMIT, unless the branch is checked out in another working
+     * tree. Return true if HEAD was moved.
+     * @param branchName the name of the branch to check out
+     * @param commit the head commit of the branch
+     */
+    public static boolean claimBranch(String branchName, Commit commit) {
+        LockFile lock = lockWorktrees();
+        try {
+            if (checkedOutAt(branchName, Main.HEAD) != null) {
+                return false;
+            }
+            String from = Branch.load(Main.HEAD).getName();
+            Head.setGlobalHEAD(branchName, commit,
+                    "checkout: moving from " + from + " to " + branchName);
+            return true;
+        } finally {
+            lock.rollback();
+        }
+    }
+
+    /**
+     * Return the path of the working tree other than the one whose HEAD
+     * is EXCEPT that has the branch BRANCHNAME checked out, or null.
+     * Working trees whose directory was deleted are ignored.
+     * @param branchName the name of a branch
+     * @param except the HEAD of a working tree to skip, or null
+     */
+    public static String checkedOutAt(String branchName, File except) {
+        Path skip = except == null ? null : except.getAbsoluteFile().toPath().normalize();
+        for (Map.Entry<File, String> entry : heads(Main.GITLET_FOLDER).entrySet()) {
+            File head = entry.getKey();
+            if (head.getAbsoluteFile().toPath().normalize().equals(skip)
+                    || !head.isFile()
+                    || !Utils.join(entry.getValue(), ".gitlet").exists()) {
+                continue;
+            }
+            if (Branch.load(head).getName().equals(branchName)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the paths of all working trees of the repository whose
+     * .gitlet directory is GITLETDIR by their HEAD files, the main
+     * working tree first.
+     * @param gitletDir the .gitlet directory of a repository
+     */
+    static Map<File, String> heads(File gitletDir) {
+        Map<File, String> heads = new LinkedHashMap<>();
+        heads.put(Utils.join(gitletDir, "HEAD"),
+                gitletDir.getAbsoluteFile().toPath().normalize().getParent().toString());
+        for (File dir : linkedDirs(gitletDir)) {
+            File gitdir = Utils.join(dir, "gitdir");
+            if (gitdir.isFile()) {
+                heads.put(Utils.join(dir, "HEAD"), Utils.readContentsAsString(gitdir));
+            }
+        }
+        return heads;
+    }
+
+    /**
+     * Return the directories of the linked working trees of the
+     * repository whose .gitlet directory is GITLETDIR, in order.
+     * @param gitletDir the .gitlet directory of a repository
+     */
+    static List<File> linkedDirs(File gitletDir) {
+        List<File> dirs = new ArrayList<>();
+        File[] files = Utils.join(gitletDir, "worktrees").listFiles(File::isDirectory);
+        if (files != null) {
+            Arrays.sort(files);
+            dirs.addAll(List.of(files));
+        }
+        return dirs;
+    }
+
+    /**
+     * Create a working tree at PATH with the branch BRANCHNAME checked
+     * out, sharing the objects and branches of the current repository.
+     * @param path the directory of the new working tree
+     * @param branchName the branch to check out there
+     */
+    public static void add(String path, String branchName) throws IOException {
+        if (!Branch.hasBranch(branchName)) {
+            Main.exitWithError("A branch with that name does not exist.");
+        }
+        File dst = new File(path).getAbsoluteFile().toPath().normalize().toFile();
+        String[] existing = dst.list();
+        if (dst.exists() && (existing == null || existing.length > 0)) {
+            Main.exitWithError("Destination path already exists "
+                    + "and is not an empty directory.");
+        }
+        Commit head = Head.getBranchHEAD(branchName);
+
+        File dir = Utils.join(Main.GITLET_FOLDER, "worktrees", dst.getName());
+        for (int i = 1; dir.exists(); i++) {
+            dir = Utils.join(Main.GITLET_FOLDER, "worktrees", dst.getName() + i);
+        }
+        dir = dir.getAbsoluteFile().toPath().normalize().toFile();
+        Utils.join(dir, "staging").mkdirs();
+        Utils.writeObject(Utils.join(dir, "staging", "index"), new Staging());
+        Utils.writeContents(Utils.join(dir, "gitdir"), dst.getPath());
+
+        String checkedOut;
+        LockFile lock = lockWorktrees();
+        try {
+            checkedOut = checkedOutAt(branchName, null);
+            if (checkedOut == null) {
+                dst.mkdirs();
+                Utils.writeContents(Utils.join(dst, ".gitlet"), dir.getPath() + "\n");
+                Utils.writeObject(Utils.join(dir, "HEAD"), new Branch(branchName, head));
+                Reflog.append(Reflog.headLog(Utils.join(dir, "HEAD")), null, head.getSHA(),
+                        "worktree: add " + branchName);
+            }
+        } finally {
+            lock.rollback();
+        }
+        if (checkedOut != null) {
+            Utils.join(dir, "staging", "index").delete();
+            Utils.join(dir, "staging").delete();
+            Utils.join(dir, "gitdir").delete();
+            dir.delete();
+            Main.exitWithError("That branch is already checked out at " + checkedOut + ".");
+        }
+
+        Promisor.prefetch(head.getSnapshot().values());
+        ObjectStore local = ObjectStore.local();
+        head.getSnapshot().entrySet().parallelStream().forEach(entry -> {
+            File file = Utils.join(dst, entry.getKey());
+            file.getParentFile().mkdirs();
+            try (InputStream in = local.openBlob(entry.getValue())) {
+                Files.copy(in, file.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Print the path, head commit and branch of each working tree.
+     */
+    public static void list() {
+        heads(Main.GITLET_FOLDER).forEach((head, path) -> {
+            if (head.isFile() && Utils.join(path, ".gitlet").exists()) {
+                Branch branch = Branch.load(head);
+                System.out.println(path + " " + branch.getHEAD().getSHA().substring(0, 7)
+                        + " [" + branch.getName() + "]");
+            }
+        });
+    }
+
+    /**
+     * Take the lock of the working trees of the current repository.
+     * It is only held, never committed.
+     */
+    private static LockFile lockWorktrees() {
+        return LockFile.acquire(Utils.join(Main.GITLET_FOLDER, "worktrees"));
+    }
+}